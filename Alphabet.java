@@ -1,5 +1,9 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author NikkiTrueblood
@@ -15,6 +19,7 @@ class Alphabet {
             chars.getChars(i, i + 1, characters, i);
         }
         _alphabet = characters;
+        buildIndex();
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -22,6 +27,18 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Return an alphabet of the BYTE_VALUES characters with codes 0
+     *  through BYTE_VALUES - 1, in order, so that each character's
+     *  index is its code and also the byte that encodes it in
+     *  ISO-8859-1.  Machines over it can convert bytes directly. */
+    static Alphabet bytes() {
+        char[] chars = new char[BYTE_VALUES];
+        for (int i = 0; i < BYTE_VALUES; i++) {
+            chars[i] = (char) i;
+        }
+        return new Alphabet(new String(chars));
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
         return _alphabet.length;
@@ -29,12 +46,7 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (_alphabet[i] == ch) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -46,13 +58,97 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        int returner = 0;
-        for (int i = 0; i < size(); i++) {
-            if (_alphabet[i] == ch) {
-                returner = i;
+        int i = indexOf(ch);
+        if (i < 0) {
+            throw error("character '%c' is not in the alphabet", ch);
+        }
+        return i;
+    }
+
+    /** Return the index of CH, or -1 if CH is not in this alphabet. */
+    private int indexOf(char ch) {
+        if (_direct != null) {
+            int k = ch - _base;
+            if (k < 0 || k >= _direct.length) {
+                return -1;
+            }
+            return _direct[k];
+        }
+        int mask = _keys.length - 1;
+        for (int h = hash(ch) & mask; _keys[h] != EMPTY; h = (h + 1) & mask) {
+            if (_keys[h] == ch) {
+                return _values[h];
             }
         }
-        return returner;
+        return -1;
     }
 
+    /** Build the character-to-index lookup structure.  Alphabets whose
+     *  characters span a small code range get a direct-mapped table;
+     *  sparse alphabets get an open-addressing hash table with linear
+     *  probing.  Duplicate characters are rejected. */
+    private void buildIndex() {
+        int lo = Character.MAX_VALUE, hi = 0;
+        for (char c : _alphabet) {
+            lo = Math.min(lo, c);
+            hi = Math.max(hi, c);
+        }
+        int range = hi - lo + 1;
+        if (size() == 0 || range <= Math.max(MIN_DIRECT, DENSITY * size())) {
+            _base = size() == 0 ? 0 : lo;
+            _direct = new int[Math.max(range, 0)];
+            Arrays.fill(_direct, -1);
+            for (int i = 0; i < size(); i++) {
+                if (_direct[_alphabet[i] - _base] >= 0) {
+                    throw error("duplicate character '%c' in alphabet",
+                                _alphabet[i]);
+                }
+                _direct[_alphabet[i] - _base] = i;
+            }
+        } else {
+            int cap = Integer.highestOneBit(2 * size() - 1) << 1;
+            _keys = new int[cap];
+            _values = new int[cap];
+            Arrays.fill(_keys, EMPTY);
+            for (int i = 0; i < size(); i++) {
+                char c = _alphabet[i];
+                if (indexOf(c) >= 0) {
+                    throw error("duplicate character '%c' in alphabet", c);
+                }
+                int h = hash(c) & (cap - 1);
+                while (_keys[h] != EMPTY) {
+                    h = (h + 1) & (cap - 1);
+                }
+                _keys[h] = c;
+                _values[h] = i;
+            }
+        }
+    }
+
+    /** Return a well-mixed hash of CH. */
+    private static int hash(char ch) {
+        int h = ch * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Number of distinct byte values. */
+    static final int BYTE_VALUES = 256;
+
+    /** Smallest code range always given a direct-mapped table. */
+    private static final int MIN_DIRECT = 256;
+    /** Largest ratio of code range to size given a direct-mapped table. */
+    private static final int DENSITY = 8;
+    /** Marks an unused slot in _keys. */
+    private static final int EMPTY = -1;
+
+    /** Direct-mapped index: _direct[c - _base] is the index of c, or -1.
+     *  Null when the hash table is used instead. */
+    private int[] _direct;
+    /** Smallest character code covered by _direct. */
+    private int _base;
+    /** Hash table keys (character codes, or EMPTY). */
+    private int[] _keys;
+    /** Hash table values: _values[h] is the index of _keys[h]. */
+    private int[] _values;
+
 }
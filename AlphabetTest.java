@@ -18,4 +18,37 @@ public class AlphabetTest {
         assertEquals(success, test.toChar(1));
     }
 
+    @Test
+    public void testPunctuationAlphabet() {
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789.,;:!?'-()";
+        Alphabet test = new Alphabet(chars);
+        for (int i = 0; i < chars.length(); i++) {
+            assertTrue(test.contains(chars.charAt(i)));
+            assertEquals(i, test.toInt(chars.charAt(i)));
+        }
+        assertFalse(test.contains('a'));
+    }
+
+    @Test
+    public void testSparseAlphabet() {
+        String chars = "AZ\u00e9\u4e2d\u6587\uff01";
+        Alphabet test = new Alphabet(chars);
+        assertEquals(6, test.size());
+        for (int i = 0; i < chars.length(); i++) {
+            assertEquals(i, test.toInt(chars.charAt(i)));
+        }
+        assertFalse(test.contains('B'));
+        assertFalse(test.contains('\u4e2e'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMissingCharacter() {
+        new Alphabet("ABCD").toInt('E');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateCharacter() {
+        new Alphabet("ABCA");
+    }
+
 }
@@ -0,0 +1,443 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack in the manner of the Turing-Welchman Bombe.
+ *  A crib (plaintext believed to be part of a message) is lined up with
+ *  the ciphertext, and each pair of letters is an edge of a menu graph
+ *  labelled with its position.  Because the rotors and reflector make
+ *  an involution S at every position, a plugboard P must satisfy
+ *  P(c) = S(P(p)) along every edge (p, c).  For each rotor order and
+ *  setting, the Bombe guesses the partner of one menu letter and
+ *  follows the consequences through the menu; a guess that forces some
+ *  letter to have two partners is contradicted, along with every other
+ *  guess that it implied.  A key where some guess survives is a stop,
+ *  and the surviving guess gives part of the plugboard.
+ *  @author NikkiTrueblood
+ */
+final class Bombe {
+
+    /** A Bombe trying rotors from CATALOG (letters from ALPHABET) in
+     *  machines with NUMROTORS slots, NUMPAWLS of which hold moving
+     *  rotors, as in KeySearch. */
+    Bombe(Alphabet alphabet, Collection<Rotor> catalog,
+          int numRotors, int numPawls) {
+        if (alphabet.size() > Long.SIZE) {
+            throw error("alphabet too large for a Bombe: %d letters",
+                        alphabet.size());
+        }
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _specs = KeySearch.rotorOrders(alphabet, catalog, numRotors,
+                                       numPawls);
+    }
+
+    /** Use THREADS threads (by default, one per processor). */
+    void setThreads(int threads) {
+        if (threads <= 0) {
+            throw error("bad number of threads: %d", threads);
+        }
+        _threads = threads;
+    }
+
+    /** Stop any run in progress as soon as possible.  It returns the
+     *  stops found so far. */
+    void cancel() {
+        _stop = true;
+    }
+
+    /** Return the starting positions at which CRIB may lie in
+     *  CIPHERTEXT: those where no letter of CRIB faces itself, since an
+     *  Enigma never encrypts a letter as itself. */
+    static List<Integer> placements(String ciphertext, String crib) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int off = 0; off + crib.length() <= ciphertext.length();
+             off += 1) {
+            int i;
+            for (i = 0; i < crib.length(); i += 1) {
+                if (crib.charAt(i) == ciphertext.charAt(off + i)) {
+                    break;
+                }
+            }
+            if (i == crib.length()) {
+                result.add(off);
+            }
+        }
+        return result;
+    }
+
+    /** Return the stops for CRIB lying at position OFFSET of
+     *  CIPHERTEXT, giving the rotors and settings at the start of
+     *  CIPHERTEXT.  Only the largest connected part of the menu is
+     *  used. */
+    List<Stop> run(String ciphertext, String crib, int offset) {
+        if (crib.isEmpty()) {
+            throw error("empty crib");
+        }
+        if (offset < 0 || offset + crib.length() > ciphertext.length()) {
+            throw error("crib does not fit the ciphertext at %d", offset);
+        }
+        if (!placements(ciphertext.substring(offset,
+                                             offset + crib.length()),
+                        crib).contains(0)) {
+            throw error("crib encrypts a letter as itself at %d", offset);
+        }
+        Menu menu = new Menu(ciphertext.substring(offset,
+                                                  offset + crib.length()),
+                             crib);
+        _stop = false;
+        _nextTask.set(0);
+        ArrayList<Callable<Worker>> workers = new ArrayList<>();
+        for (int t = 0; t < _threads; t += 1) {
+            workers.add(new Worker(menu, offset));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayList<Stop> result = new ArrayList<>();
+        try {
+            for (Future<Worker> future : pool.invokeAll(workers)) {
+                result.addAll(future.get()._stops);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("Bombe run interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("Bombe run failed: %s", excp.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /** A key at which the Bombe stopped. */
+    static final class Stop {
+
+        /** A stop with rotors from SPEC at setting SETTING, with
+         *  plugboard cycles PLUGBOARD. */
+        private Stop(MachineSpec spec, String setting, String plugboard) {
+            _rotors = new String[spec.numRotors()];
+            for (int k = 0; k < _rotors.length; k += 1) {
+                _rotors[k] = spec.rotor(k).name();
+            }
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my setting at the start of the ciphertext. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs implied for the letters of the
+         *  menu, as cycles in the form accepted by Permutation.  Letters
+         *  outside the menu are not determined. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", _rotors) + " " + _setting + " "
+                + _plugboard;
+        }
+
+        /** Names of my rotors, reflector first. */
+        private final String[] _rotors;
+        /** My setting. */
+        private final String _setting;
+        /** My plugboard cycles. */
+        private final String _plugboard;
+    }
+
+    /** The connected part of the menu graph with the most edges. */
+    private final class Menu {
+
+        /** The menu for CRIB lined up with CIPHER, of equal length. */
+        Menu(String cipher, String crib) {
+            int size = _alphabet.size();
+            int n = crib.length();
+            int[] from = new int[n];
+            int[] to = new int[n];
+            int[] root = new int[size];
+            for (int a = 0; a < size; a += 1) {
+                root[a] = a;
+            }
+            for (int i = 0; i < n; i += 1) {
+                from[i] = _alphabet.toInt(crib.charAt(i));
+                to[i] = _alphabet.toInt(cipher.charAt(i));
+                root[find(root, from[i])] = find(root, to[i]);
+            }
+            int[] edgesIn = new int[size];
+            int best = -1;
+            for (int i = 0; i < n; i += 1) {
+                int r = find(root, from[i]);
+                edgesIn[r] += 1;
+                if (best < 0 || edgesIn[r] > edgesIn[best]) {
+                    best = r;
+                }
+            }
+            int[] degree = new int[size];
+            _positions = new int[n];
+            int m = 0;
+            for (int i = 0; i < n; i += 1) {
+                if (best >= 0 && find(root, from[i]) == best) {
+                    _positions[m] = i;
+                    degree[from[i]] += 1;
+                    degree[to[i]] += 1;
+                    m += 1;
+                }
+            }
+            _positions = Arrays.copyOf(_positions, m);
+            _start = new int[size + 1];
+            for (int a = 0; a < size; a += 1) {
+                _start[a + 1] = _start[a] + degree[a];
+                if (degree[a] > degree[_test]) {
+                    _test = a;
+                }
+            }
+            _other = new int[2 * m];
+            _edge = new int[2 * m];
+            int[] fill = Arrays.copyOf(_start, size);
+            for (int e = 0; e < m; e += 1) {
+                int i = _positions[e];
+                _other[fill[from[i]]] = to[i];
+                _edge[fill[from[i]]] = e;
+                fill[from[i]] += 1;
+                _other[fill[to[i]]] = from[i];
+                _edge[fill[to[i]]] = e;
+                fill[to[i]] += 1;
+            }
+        }
+
+        /** Return the representative of A's set in the union-find forest
+         *  ROOT. */
+        private int find(int[] root, int a) {
+            while (root[a] != a) {
+                root[a] = root[root[a]];
+                a = root[a];
+            }
+            return a;
+        }
+
+        /** Crib positions of the edges, in increasing order. */
+        private int[] _positions;
+        /** The edges touching letter A are _other and _edge entries
+         *  _start[A] .. _start[A + 1] - 1. */
+        private final int[] _start;
+        /** Letter at the far end of each edge entry. */
+        private final int[] _other;
+        /** Edge number (index into _positions) of each edge entry. */
+        private final int[] _edge;
+        /** The letter whose partner is guessed: the one with most
+         *  edges. */
+        private int _test;
+    }
+
+    /** One Bombe thread.  It claims tasks (a rotor order with one
+     *  position of its leftmost non-reflector rotor) and tries every
+     *  setting of the remaining rotors, reusing all of its arrays. */
+    private final class Worker implements Callable<Worker> {
+
+        /** A worker testing MENU, whose crib lies at OFFSET. */
+        Worker(Menu menu, int offset) {
+            int size = _alphabet.size();
+            _menu = menu;
+            _offset = offset;
+            _scramblers = new int[menu._positions.length][size];
+            _masks = new long[size];
+            _pending = new int[size * size];
+            _pos = new int[_numRotors];
+            _setting = new int[_numRotors];
+            _full = size == Long.SIZE ? -1L : (1L << size) - 1;
+        }
+
+        @Override
+        public Worker call() {
+            int size = _alphabet.size();
+            long tasks = (long) _specs.size() * size;
+            for (long t = _nextTask.getAndIncrement(); t < tasks && !_stop;
+                 t = _nextTask.getAndIncrement()) {
+                MachineSpec spec = _specs.get((int) (t / size));
+                Arrays.fill(_setting, 0);
+                _setting[1] = (int) (t % size);
+                do {
+                    if (_stop) {
+                        break;
+                    }
+                    tryKey(spec);
+                } while (nextSetting());
+            }
+            return this;
+        }
+
+        /** Advance _setting to the next with the same leftmost rotor
+         *  position, returning false if there is none. */
+        private boolean nextSetting() {
+            for (int k = _numRotors - 1; k > 1; k -= 1) {
+                _setting[k] += 1;
+                if (_setting[k] < _alphabet.size()) {
+                    return true;
+                }
+                _setting[k] = 0;
+            }
+            return false;
+        }
+
+        /** Test the rotors of SPEC at _setting, recording any stop. */
+        private void tryKey(MachineSpec spec) {
+            MachineKernel kernel = spec.kernel();
+            int size = _alphabet.size();
+            System.arraycopy(_setting, 0, _pos, 0, _numRotors);
+            kernel.skip(_pos, _offset);
+            int[] positions = _menu._positions;
+            MachineKernel.Fold fold = null;
+            int i = 0;
+            for (int e = 0; e < positions.length; e += 1) {
+                for (; i <= positions[e]; i += 1) {
+                    kernel.step(_pos);
+                }
+                fold = kernel.fold(_pos, fold);
+                int[] scrambler = _scramblers[e];
+                for (int c = 0; c < size; c += 1) {
+                    scrambler[c] = kernel.scramble(_pos, c, fold);
+                }
+            }
+            int test = _menu._test;
+            long refuted = 0;
+            for (int guess = 0; guess < size; guess += 1) {
+                if ((refuted & (1L << guess)) != 0) {
+                    continue;
+                }
+                if (close(test, guess)) {
+                    _stops.add(new Stop(spec, settingString(),
+                                        plugboardString()));
+                    return;
+                }
+                refuted |= _masks[test];
+            }
+        }
+
+        /** Follow the consequences of pairing TEST with GUESS through the
+         *  menu, recording the possible partners of each letter in
+         *  _masks, and return true iff no letter has two partners. */
+        private boolean close(int test, int guess) {
+            int size = _alphabet.size();
+            Arrays.fill(_masks, 0L);
+            _top = 0;
+            boolean consistent = true;
+            consistent &= add(test, guess);
+            while (_top > 0) {
+                _top -= 1;
+                int a = _pending[_top] / size;
+                int v = _pending[_top] % size;
+                for (int j = _menu._start[a]; j < _menu._start[a + 1];
+                     j += 1) {
+                    consistent &= add(_menu._other[j],
+                                      _scramblers[_menu._edge[j]][v]);
+                }
+                if (_masks[test] == _full) {
+                    return false;
+                }
+            }
+            return consistent;
+        }
+
+        /** Record that A may be paired with V, and V with A, queueing
+         *  any pair not already known.  Return false iff this gives A
+         *  or V a second partner. */
+        private boolean add(int a, int v) {
+            boolean ok = push(a, v);
+            return push(v, a) && ok;
+        }
+
+        /** Record and queue the pair (A, V) if new.  Return false iff A
+         *  has another partner. */
+        private boolean push(int a, int v) {
+            long bit = 1L << v;
+            if ((_masks[a] & bit) == 0) {
+                _masks[a] |= bit;
+                _pending[_top] = a * _alphabet.size() + v;
+                _top += 1;
+            }
+            return _masks[a] == bit;
+        }
+
+        /** Return _setting as a String. */
+        private String settingString() {
+            char[] setting = new char[_numRotors - 1];
+            for (int k = 1; k < _numRotors; k += 1) {
+                setting[k - 1] = _alphabet.toChar(_setting[k]);
+            }
+            return new String(setting);
+        }
+
+        /** Return the plugboard cycles given by _masks. */
+        private String plugboardString() {
+            StringBuilder cycles = new StringBuilder();
+            for (int a = 0; a < _alphabet.size(); a += 1) {
+                int b = Long.numberOfTrailingZeros(_masks[a]);
+                if (_masks[a] != 0 && b > a) {
+                    if (cycles.length() > 0) {
+                        cycles.append(' ');
+                    }
+                    cycles.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(b)).append(')');
+                }
+            }
+            return cycles.toString();
+        }
+
+        /** The menu being tested. */
+        private final Menu _menu;
+        /** Position of the crib in the ciphertext. */
+        private final int _offset;
+        /** _scramblers[E][C] is the rotors' and reflector's image of C at
+         *  the crib position of menu edge E. */
+        private final int[][] _scramblers;
+        /** _masks[A] has bit V set iff A may be paired with V. */
+        private final long[] _masks;
+        /** Pairs A * size + V waiting to be followed through the menu. */
+        private final int[] _pending;
+        /** Number of entries in _pending. */
+        private int _top;
+        /** Rotor positions while stepping through the crib. */
+        private final int[] _pos;
+        /** Setting being tried. */
+        private final int[] _setting;
+        /** Mask with a bit for every letter. */
+        private final long _full;
+        /** Stops found by this worker. */
+        private final ArrayList<Stop> _stops = new ArrayList<>();
+    }
+
+    /** Alphabet of the rotors and texts. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** One spec for each rotor order to be tried. */
+    private final ArrayList<MachineSpec> _specs;
+    /** Number of threads. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+    /** True when threads should stop. */
+    private volatile boolean _stop;
+    /** Index of the next task to be claimed. */
+    private final AtomicLong _nextTask = new AtomicLong();
+}
@@ -0,0 +1,65 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author NikkiTrueblood
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    private static final String PLAIN =
+        "KEINEBESONDERENEREIGNISSEWETTERVORHERSAGEREGENHEILHITLER";
+
+    private static final String PLUGBOARD = "(AQ) (BJ) (EZ) (HR) (KT) (NS)";
+
+    /** Return the naval rotors that the searches choose among. */
+    private List<Rotor> catalog() {
+        return navalRotors("B", "Beta", "I", "II", "III");
+    }
+
+    @Test
+    public void testPlacements() {
+        assertEquals(Arrays.asList(0, 3),
+                     Bombe.placements("ABCAB", "BA"));
+    }
+
+    @Test
+    public void testRun() {
+        List<Rotor> catalog = catalog();
+        Machine mach = new Machine(AZ, 4, 2, catalog);
+        mach.insertRotors(new String[] {"B", "Beta", "II", "III"});
+        mach.setRotors("GUZ");
+        mach.setPlugboard(new Permutation(PLUGBOARD, AZ));
+        String cipher = mach.convert(PLAIN);
+        String crib = "WETTERVORHERSAGE";
+        int offset = PLAIN.indexOf(crib);
+        assertTrue(Bombe.placements(cipher, crib).contains(offset));
+
+        Bombe bombe = new Bombe(AZ, catalog, 4, 2);
+        bombe.setThreads(3);
+        List<Bombe.Stop> stops = bombe.run(cipher, crib, offset);
+        Bombe.Stop found = null;
+        for (Bombe.Stop stop : stops) {
+            if (stop.setting().equals("GUZ")
+                && Arrays.equals(stop.rotors(),
+                                 new String[] {"B", "Beta", "II", "III"})) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        assertTrue(stops.size() < 20);
+        for (String pair : found.plugboard().split(" ")) {
+            assertTrue(pair, PLUGBOARD.contains(pair));
+        }
+    }
+}
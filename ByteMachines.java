@@ -0,0 +1,89 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Generates byte-mode machines: machines over Alphabet.bytes(), whose
+ *  rotors have random wirings drawn from a seed, so that they convert
+ *  binary data directly (see Machine.convert(byte[], ...)) with no
+ *  text encoding.  The same seed and shape always give the same
+ *  rotors, so a seed and the rotor names stand for a configuration
+ *  file; MachineImage can also store a generated machine, since images
+ *  hold any alphabet.  Settings over the byte alphabet are most easily
+ *  written as ISO-8859-1 strings.  Plugboards must be given as tables
+ *  (see Permutation(int[], Alphabet)), since the characters of cycle
+ *  notation are themselves in the byte alphabet.
+ *  @author NikkiTrueblood
+ */
+final class ByteMachines {
+
+    /** Not instantiable. */
+    private ByteMachines() {
+    }
+
+    /** Return a byte-mode machine with NUMROTORS slots and NUMPAWLS
+     *  pawls, whose available rotors are generated from SEED: a
+     *  reflector named "R", fixed rotors named "N1", "N2", ... for the
+     *  slots without pawls, and moving rotors named "M1", "M2", ... for
+     *  those with them, each moving rotor having one notch.  They are
+     *  inserted in that order, all at position 0. */
+    static Machine generate(long seed, int numRotors, int numPawls) {
+        if (numRotors < 2 || numPawls < 0 || numPawls >= numRotors) {
+            throw error("bad machine shape: %d rotors, %d pawls",
+                        numRotors, numPawls);
+        }
+        Alphabet alpha = Alphabet.bytes();
+        Random random = new Random(seed);
+        List<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R",
+                new Permutation(pairing(random), alpha)));
+        for (int k = 1; k < numRotors - numPawls; k += 1) {
+            rotors.add(new FixedRotor("N" + k,
+                    new Permutation(shuffle(random), alpha)));
+        }
+        for (int k = 1; k <= numPawls; k += 1) {
+            char notch = alpha.toChar(random.nextInt(alpha.size()));
+            rotors.add(new MovingRotor("M" + k,
+                    new Permutation(shuffle(random), alpha),
+                    String.valueOf(notch)));
+        }
+        String[] names = new String[numRotors];
+        for (int k = 0; k < numRotors; k += 1) {
+            names[k] = rotors.get(k).name();
+        }
+        Machine machine = new Machine(alpha, numRotors, numPawls, rotors);
+        machine.insertRotors(names);
+        return machine;
+    }
+
+    /** Return a random permutation of the byte values, from RANDOM. */
+    private static int[] shuffle(Random random) {
+        int[] table = new int[Alphabet.BYTE_VALUES];
+        for (int i = 0; i < table.length; i += 1) {
+            table[i] = i;
+        }
+        for (int i = table.length - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            int t = table[i];
+            table[i] = table[j];
+            table[j] = t;
+        }
+        return table;
+    }
+
+    /** Return a random pairing of the byte values (a permutation that
+     *  is its own inverse and fixes nothing, as a reflector's must
+     *  be), from RANDOM. */
+    private static int[] pairing(Random random) {
+        int[] order = shuffle(random);
+        int[] table = new int[order.length];
+        for (int i = 0; i < order.length; i += 2) {
+            table[order[i]] = order[i + 1];
+            table[order[i + 1]] = order[i];
+        }
+        return table;
+    }
+}
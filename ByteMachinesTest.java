@@ -0,0 +1,116 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for byte-mode machines.
+ *  @author NikkiTrueblood
+ */
+public class ByteMachinesTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a machine generated from SEED, at byte setting SETTING and
+     *  with byte pairs PLUGS on its plugboard. */
+    private Machine machine(long seed, byte[] setting, byte[] plugs) {
+        Machine mach = ByteMachines.generate(seed, 5, 3);
+        int[] table = new int[Alphabet.BYTE_VALUES];
+        for (int i = 0; i < table.length; i += 1) {
+            table[i] = i;
+        }
+        for (int i = 0; i < plugs.length; i += 2) {
+            table[plugs[i] & 0xff] = plugs[i + 1] & 0xff;
+            table[plugs[i + 1] & 0xff] = plugs[i] & 0xff;
+        }
+        mach.setPlugboard(new Permutation(table, mach.alphabet()));
+        mach.setRotors(new String(setting, StandardCharsets.ISO_8859_1));
+        return mach;
+    }
+
+    @Test
+    public void testGenerate() {
+        Machine mach = ByteMachines.generate(7, 5, 3);
+        assertEquals(Alphabet.BYTE_VALUES, mach.alphabet().size());
+        assertEquals("R", mach.getRotor(0).name());
+        assertEquals("N1", mach.getRotor(1).name());
+        assertEquals("M3", mach.getRotor(4).name());
+        Permutation reflector = mach.getRotor(0).permutation();
+        for (int i = 0; i < Alphabet.BYTE_VALUES; i += 1) {
+            assertNotEquals(i, reflector.permute(i));
+            assertEquals(i, reflector.permute(reflector.permute(i)));
+        }
+        Permutation fast = ByteMachines.generate(7, 5, 3)
+            .getRotor(4).permutation();
+        for (int i = 0; i < Alphabet.BYTE_VALUES; i += 1) {
+            assertEquals(mach.getRotor(4).permutation().permute(i),
+                         fast.permute(i));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(3);
+        byte[] data = new byte[100000];
+        random.nextBytes(data);
+        byte[] setting = { 0, (byte) 0xff, 17, (byte) 0x80 };
+        byte[] plugs = { 1, 2, (byte) 200, '(', 0, (byte) 0xfe };
+
+        byte[] cipher = new byte[data.length];
+        machine(5, setting, plugs).convert(data, 0, data.length, cipher, 0);
+        assertFalse(Arrays.equals(data, cipher));
+
+        int[] codes = new int[data.length];
+        for (int i = 0; i < data.length; i += 1) {
+            codes[i] = data[i] & 0xff;
+        }
+        machine(5, setting, plugs).convert(codes, 0, codes.length, codes, 0);
+        for (int i = 0; i < data.length; i += 1) {
+            assertEquals(codes[i], cipher[i] & 0xff);
+        }
+
+        Machine mach = machine(5, setting, plugs);
+        ByteBuffer src = ByteBuffer.allocateDirect(cipher.length);
+        src.put(cipher).flip();
+        ByteBuffer dst = ByteBuffer.allocateDirect(1000);
+        ByteBuffer plain = ByteBuffer.allocate(data.length);
+        while (src.hasRemaining()) {
+            dst.clear();
+            mach.convert(src, dst);
+            dst.flip();
+            plain.put(dst);
+        }
+        assertArrayEquals(data, plain.array());
+    }
+
+    @Test
+    public void testImage() {
+        Machine mach = ByteMachines.generate(11, 4, 2);
+        Machine copy = MachineImage.decode(MachineImage.encode(mach));
+        copy.insertRotors(new String[] { "R", "N1", "M1", "M2" });
+        byte[] data = new byte[Alphabet.BYTE_VALUES * 4];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) i;
+        }
+        byte[] a = data.clone(), b = data.clone();
+        mach.convert(a, 0, a.length, a, 0);
+        copy.convert(b, 0, b.length, b, 0);
+        assertArrayEquals(a, b);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTextMachine() {
+        Machine mach = new Machine(new Alphabet(), 2, 0,
+            Arrays.asList(new Reflector("B",
+                new Permutation(TestUtils.NAVALA.get("B"), new Alphabet())),
+                new FixedRotor("F", new Permutation("", new Alphabet()))));
+        mach.convert(new byte[1], 0, 1, new byte[1], 0);
+    }
+}
@@ -0,0 +1,26 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A Flight Recorder event for a change to a machine's configuration:
+ *  inserting rotors, setting them, or setting the plugboard.
+ *  @author NikkiTrueblood
+ */
+@Name("enigma.Configuration")
+@Label("Configuration Change")
+@Category("Enigma")
+@Description("Rotors inserted or set, or plugboard set, on a machine")
+class ConfigurationEvent extends Event {
+
+    /** What changed: "rotors", "setting" or "plugboard". */
+    @Label("Kind")
+    String kind;
+
+    /** The new rotor names, setting or plugboard cycles. */
+    @Label("Value")
+    String value;
+}
@@ -0,0 +1,56 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A Flight Recorder event for one bulk conversion (a message line or
+ *  buffer) by a Machine, giving its length and its starting setting.
+ *  @author NikkiTrueblood
+ */
+@Name("enigma.Conversion")
+@Label("Conversion")
+@Category("Enigma")
+@Description("Conversion of a message by a machine")
+class ConversionEvent extends Event {
+
+    /** Number of characters converted. */
+    @Label("Length")
+    int length;
+
+    /** Setting of the machine's rotors before the conversion. */
+    @Label("Start Setting")
+    String setting;
+
+    /** Return true iff conversion events are being recorded, so that
+     *  callers need neither allocate one nor work out its setting when
+     *  they are not. */
+    static boolean enabled() {
+        return TYPE.isEnabled();
+    }
+
+    /** Return an event begun for converting LENGTH characters from
+     *  SETTING.  Only to be called when enabled(). */
+    static ConversionEvent begun(int length, String setting) {
+        ConversionEvent event = new ConversionEvent();
+        event.begin();
+        event.length = length;
+        event.setting = setting;
+        return event;
+    }
+
+    /** Commit EVENT, as returned by begun, if there is one and it is
+     *  due. */
+    static void end(ConversionEvent event) {
+        if (event != null && event.shouldCommit()) {
+            event.commit();
+        }
+    }
+
+    /** My type, whose enabled state is cheap to query. */
+    private static final EventType TYPE =
+        EventType.getEventType(ConversionEvent.class);
+}
@@ -0,0 +1,271 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/** Byte channels and streams that convert text with a Machine as it
+ *  passes through, the byte counterparts of EnigmaReader and
+ *  EnigmaWriter.  Bytes are decoded with a charset into a reusable
+ *  character buffer, converted there, and encoded again, so memory use
+ *  does not depend on the length of the message.  Characters that are
+ *  not in the machine's alphabet are either dropped or, as by
+ *  Machine.convert, an error.
+ *  @author NikkiTrueblood
+ */
+final class EnigmaChannels {
+
+    /** Not instantiable. */
+    private EnigmaChannels() {
+    }
+
+    /** Return a channel reading the conversions by MACHINE of the text
+     *  in CHARSET read from SRC, dropping characters not in MACHINE's
+     *  alphabet iff FILTER.  Closing it closes SRC. */
+    static ReadableByteChannel readable(ReadableByteChannel src,
+                                        Machine machine, Charset charset,
+                                        boolean filter) {
+        return new ConvertingReader(src, machine, charset, filter);
+    }
+
+    /** Return a channel writing to DST the conversions by MACHINE of the
+     *  text in CHARSET written to it, dropping characters not in
+     *  MACHINE's alphabet iff FILTER.  Closing it writes out any
+     *  partial character and closes DST. */
+    static WritableByteChannel writable(WritableByteChannel dst,
+                                        Machine machine, Charset charset,
+                                        boolean filter) {
+        return new ConvertingWriter(dst, machine, charset, filter);
+    }
+
+    /** Return a stream over IN as for readable. */
+    static InputStream input(InputStream in, Machine machine,
+                             Charset charset, boolean filter) {
+        return Channels.newInputStream(
+            readable(Channels.newChannel(in), machine, charset, filter));
+    }
+
+    /** Return a stream onto OUT as for writable. */
+    static OutputStream output(OutputStream out, Machine machine,
+                               Charset charset, boolean filter) {
+        return Channels.newOutputStream(
+            writable(Channels.newChannel(out), machine, charset, filter));
+    }
+
+    /** Convert the characters of CHARS from START to its position with
+     *  MACHINE, first dropping those not in its alphabet iff FILTER, as
+     *  by EnigmaReader.prepare.  Those before START have been converted
+     *  already.  Leave CHARS flipped for reading all the results. */
+    private static void convert(CharBuffer chars, int start,
+                                Machine machine, boolean filter) {
+        char[] buf = chars.array();
+        int len = EnigmaReader.prepare(machine.alphabet(), buf, start,
+                                       chars.position() - start, filter);
+        machine.convert(buf, start, len, buf, start);
+        chars.position(start + len);
+        chars.flip();
+    }
+
+    /** The channel returned by readable. */
+    private static class ConvertingReader implements ReadableByteChannel {
+
+        /** A channel as described for readable(SRC, MACHINE, CHARSET,
+         *  FILTER). */
+        ConvertingReader(ReadableByteChannel src, Machine machine,
+                         Charset charset, boolean filter) {
+            _src = src;
+            _machine = machine;
+            _filter = filter;
+            _decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            _encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            _in = ByteBuffer.allocate(BUFFER_SIZE);
+            _chars = CharBuffer.allocate(BUFFER_SIZE);
+            _out = ByteBuffer.allocate((int) Math.ceil(
+                BUFFER_SIZE * _encoder.maxBytesPerChar()));
+            _out.flip();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            while (!_out.hasRemaining()) {
+                if (_eof) {
+                    return -1;
+                }
+                refill();
+            }
+            int n = Math.min(dst.remaining(), _out.remaining());
+            int limit = _out.limit();
+            _out.limit(_out.position() + n);
+            dst.put(_out);
+            _out.limit(limit);
+            return n;
+        }
+
+        /** Read and decode more from _src, convert it and encode the
+         *  result into _out.  Converted characters that cannot be encoded
+         *  yet, such as the first half of a surrogate pair, are kept in
+         *  _chars for the next refill. */
+        private void refill() throws IOException {
+            int start = _chars.position();
+            while (_chars.position() == start && !_eof) {
+                int n = _src.read(_in);
+                _in.flip();
+                if (n < 0) {
+                    _decoder.decode(_in, _chars, true);
+                    _decoder.flush(_chars);
+                    _eof = true;
+                } else {
+                    _decoder.decode(_in, _chars, false);
+                }
+                _in.compact();
+            }
+            convert(_chars, start, _machine, _filter);
+            _out.clear();
+            _encoder.encode(_chars, _out, _eof);
+            if (_eof) {
+                _encoder.flush(_out);
+            }
+            _out.flip();
+            _chars.compact();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _src.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            _src.close();
+        }
+
+        /** Source of the bytes to convert. */
+        private final ReadableByteChannel _src;
+        /** Machine converting them. */
+        private final Machine _machine;
+        /** True iff characters not in the alphabet are dropped. */
+        private final boolean _filter;
+        /** Converts source bytes to characters. */
+        private final CharsetDecoder _decoder;
+        /** Converts converted characters to bytes. */
+        private final CharsetEncoder _encoder;
+        /** Bytes read from _src but not yet decoded. */
+        private final ByteBuffer _in;
+        /** Characters being converted, after those converted but not
+         *  yet encoded, which are in [0, position). */
+        private final CharBuffer _chars;
+        /** Converted bytes not yet read, in [position, limit). */
+        private final ByteBuffer _out;
+        /** True once _src is exhausted. */
+        private boolean _eof;
+    }
+
+    /** The channel returned by writable. */
+    private static class ConvertingWriter implements WritableByteChannel {
+
+        /** A channel as described for writable(DST, MACHINE, CHARSET,
+         *  FILTER). */
+        ConvertingWriter(WritableByteChannel dst, Machine machine,
+                         Charset charset, boolean filter) {
+            _dst = dst;
+            _machine = machine;
+            _filter = filter;
+            _decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            _encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            _in = ByteBuffer.allocate(BUFFER_SIZE);
+            _chars = CharBuffer.allocate(BUFFER_SIZE);
+            _out = ByteBuffer.allocate((int) Math.ceil(
+                BUFFER_SIZE * _encoder.maxBytesPerChar()));
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int n = Math.min(src.remaining(), _in.remaining());
+            int limit = src.limit();
+            src.limit(src.position() + n);
+            _in.put(src);
+            src.limit(limit);
+            pass(false);
+            return n;
+        }
+
+        /** Decode what is in _in, convert it and write the result to
+         *  _dst, treating it as the end of the input iff LAST.  As in
+         *  ConvertingReader.refill, what cannot be encoded yet is kept in
+         *  _chars. */
+        private void pass(boolean last) throws IOException {
+            _in.flip();
+            int start = _chars.position();
+            _decoder.decode(_in, _chars, last);
+            if (last) {
+                _decoder.flush(_chars);
+            }
+            _in.compact();
+            convert(_chars, start, _machine, _filter);
+            _out.clear();
+            _encoder.encode(_chars, _out, last);
+            if (last) {
+                _encoder.flush(_out);
+            }
+            _out.flip();
+            _chars.compact();
+            while (_out.hasRemaining()) {
+                _dst.write(_out);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _dst.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (_dst.isOpen()) {
+                    pass(true);
+                }
+            } finally {
+                _dst.close();
+            }
+        }
+
+        /** Destination of the converted bytes. */
+        private final WritableByteChannel _dst;
+        /** Machine converting them. */
+        private final Machine _machine;
+        /** True iff characters not in the alphabet are dropped. */
+        private final boolean _filter;
+        /** Converts written bytes to characters. */
+        private final CharsetDecoder _decoder;
+        /** Converts converted characters to bytes. */
+        private final CharsetEncoder _encoder;
+        /** Bytes written but not yet decoded. */
+        private final ByteBuffer _in;
+        /** Characters being converted, after those converted but not
+         *  yet encoded, which are in [0, position). */
+        private final CharBuffer _chars;
+        /** Converted bytes not yet written to _dst. */
+        private final ByteBuffer _out;
+    }
+
+    /** Size of the byte and character buffers. */
+    private static final int BUFFER_SIZE = 1 << 13;
+}
@@ -0,0 +1,91 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** A Reader that converts the characters of another Reader with a
+ *  Machine as they are read, so that a message of any length can be
+ *  encrypted or decrypted without holding it all in memory.  Each read
+ *  converts, in the caller's buffer, whatever the underlying Reader
+ *  supplies.  Characters that are not in the machine's alphabet are
+ *  either dropped or, as by Machine.convert, an error.
+ *  @author NikkiTrueblood
+ */
+class EnigmaReader extends Reader {
+
+    /** A reader of the conversions by MACHINE of the characters of IN,
+     *  dropping those not in MACHINE's alphabet iff FILTER.  MACHINE's
+     *  rotors advance as characters are read. */
+    EnigmaReader(Reader in, Machine machine, boolean filter) {
+        super(in);
+        _in = in;
+        _machine = machine;
+        _filter = filter;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int n = _in.read(cbuf, off, len);
+            if (n < 0) {
+                return -1;
+            }
+            n = prepare(_machine.alphabet(), cbuf, off, n, _filter);
+            if (n > 0) {
+                _machine.convert(cbuf, off, n, cbuf, off);
+                return n;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** Make BUF[OFF .. OFF + LEN) ready to be converted in place over
+     *  ALPHA, and return the number of characters, from OFF on, to
+     *  convert.  If FILTER, the characters not in ALPHA are dropped, as
+     *  by retain.  Otherwise, if any of them is not in ALPHA, throw the
+     *  error Machine.convert would, before any has been converted, so
+     *  that neither BUF nor the machine is left half done. */
+    static int prepare(Alphabet alpha, char[] buf, int off, int len,
+                       boolean filter) {
+        if (filter) {
+            return retain(alpha, buf, off, len);
+        }
+        for (int i = off; i < off + len; i += 1) {
+            if (!alpha.contains(buf[i])) {
+                throw error("character '%c' is not in the alphabet",
+                            buf[i]);
+            }
+        }
+        return len;
+    }
+
+    /** Move the characters of BUF[OFF .. OFF + LEN) that are in ALPHA
+     *  to the front of that range, in order, and return their number. */
+    static int retain(Alphabet alpha, char[] buf, int off, int len) {
+        int n = off;
+        for (int i = off; i < off + len; i += 1) {
+            char c = buf[i];
+            if (alpha.contains(c)) {
+                buf[n] = c;
+                n += 1;
+            }
+        }
+        return n - off;
+    }
+
+    /** Source of the characters to convert. */
+    private final Reader _in;
+    /** Machine converting them. */
+    private final Machine _machine;
+    /** True iff characters not in the alphabet are dropped. */
+    private final boolean _filter;
+}
@@ -0,0 +1,158 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for EnigmaReader, EnigmaWriter and
+ *  EnigmaChannels.
+ *  @author NikkiTrueblood
+ */
+public class EnigmaStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the machine of the Hiawatha example, at AXLE. */
+    private Machine mach1() {
+        return navalMachine("AXLE", "(HQ) (EX) (IP) (TR) (BY)",
+                            "B", "Beta", "III", "IV", "I");
+    }
+
+    /** Return N random letters of AZ, from RANDOM. */
+    private String letters(Random random, int n) {
+        char[] text = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            text[i] = AZ.toChar(random.nextInt(AZ.size()));
+        }
+        return new String(text);
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        Reader in = new EnigmaReader(
+            new StringReader("FROM HIS shoulder, HIAWATHA"), mach1(), true);
+        char[] buf = new char[7];
+        StringBuilder result = new StringBuilder();
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            result.append(buf, 0, n);
+        }
+        assertEquals(mach1().convert("FROMHISHIAWATHA"), result.toString());
+
+        Machine mach = mach1();
+        in = new EnigmaReader(new StringReader("FROM HIS"), mach, false);
+        try {
+            in.read(buf);
+            fail("space should not be in the alphabet");
+        } catch (EnigmaException excp) {
+            assertEquals("FROM HI", new String(buf));
+            assertEquals(mach1().convert("FROM"), mach.convert("FROM"));
+        }
+    }
+
+    @Test
+    public void testWriter() throws Exception {
+        String text = letters(new Random(17), 100000);
+        StringWriter out = new StringWriter();
+        try (Writer writer = new EnigmaWriter(out, mach1(), true)) {
+            writer.write(text, 0, 3);
+            writer.write(' ');
+            writer.write(text.charAt(3));
+            writer.write(text.toCharArray(), 4, text.length() - 4);
+        }
+        assertEquals(mach1().convert(text), out.toString());
+    }
+
+    @Test
+    public void testChannels() throws Exception {
+        String text = letters(new Random(29), 50000);
+        String noisy = text.substring(0, 10) + "\u00e9\u20ac\n"
+            + text.substring(10);
+        byte[] bytes = noisy.getBytes(StandardCharsets.UTF_8);
+
+        InputStream in = EnigmaChannels.input(
+            new ByteArrayInputStream(bytes), mach1(),
+            StandardCharsets.UTF_8, true);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        byte[] buf = new byte[1000];
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            sink.write(buf, 0, n);
+        }
+        String cipher = sink.toString("UTF-8");
+        assertEquals(mach1().convert(text), cipher);
+
+        sink.reset();
+        try (OutputStream out = EnigmaChannels.output(sink, mach1(),
+                StandardCharsets.UTF_8, true)) {
+            for (byte b : bytes) {
+                out.write(b);
+            }
+        }
+        assertEquals(cipher, sink.toString("UTF-8"));
+    }
+
+    /** Return a machine over A, B, C, D and the two halves of U+1F600
+     *  that exchanges A with the first half and B with the second, so
+     *  that each AB it converts becomes a surrogate pair. */
+    private Machine pairMachine() {
+        Alphabet alpha = new Alphabet("ABCD\uD83D\uDE00");
+        List<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(
+            "(A\uD83D) (B\uDE00) (CD)", alpha)));
+        return new Machine(alpha, 1, 0, rotors);
+    }
+
+    @Test
+    public void testSplitSurrogates() throws Exception {
+        for (int skew = 0; skew < 3; skew += 1) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < skew; i += 1) {
+                text.append('C');
+            }
+            for (int i = 0; i < 20000; i += 1) {
+                text.append("AB");
+            }
+            Machine mach = pairMachine();
+            mach.insertRotors(new String[] { "R" });
+            byte[] expected = mach.convert(text.toString())
+                .getBytes(StandardCharsets.UTF_8);
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+            mach = pairMachine();
+            mach.insertRotors(new String[] { "R" });
+            InputStream in = EnigmaChannels.input(
+                new ByteArrayInputStream(bytes), mach,
+                StandardCharsets.UTF_8, false);
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            byte[] buf = new byte[1000];
+            for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                sink.write(buf, 0, n);
+            }
+            assertArrayEquals(expected, sink.toByteArray());
+
+            mach = pairMachine();
+            mach.insertRotors(new String[] { "R" });
+            sink.reset();
+            try (OutputStream out = EnigmaChannels.output(sink, mach,
+                    StandardCharsets.UTF_8, false)) {
+                out.write(bytes);
+            }
+            assertArrayEquals(expected, sink.toByteArray());
+        }
+    }
+}
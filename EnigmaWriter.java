@@ -0,0 +1,83 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that converts characters with a Machine before passing
+ *  them on to another Writer, a buffer at a time, so that a message of
+ *  any length can be encrypted or decrypted as it is produced.
+ *  Characters that are not in the machine's alphabet are either
+ *  dropped or, as by Machine.convert, an error.
+ *  @author NikkiTrueblood
+ */
+class EnigmaWriter extends Writer {
+
+    /** A writer passing the conversions by MACHINE of what is written to
+     *  it on to OUT, dropping characters not in MACHINE's alphabet iff
+     *  FILTER.  MACHINE's rotors advance as characters are written. */
+    EnigmaWriter(Writer out, Machine machine, boolean filter) {
+        super(out);
+        _out = out;
+        _machine = machine;
+        _filter = filter;
+        _buffer = new char[BUFFER_SIZE];
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int k = Math.min(len, _buffer.length);
+            System.arraycopy(cbuf, off, _buffer, 0, k);
+            pass(k);
+            off += k;
+            len -= k;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            int k = Math.min(len, _buffer.length);
+            str.getChars(off, off + k, _buffer, 0);
+            pass(k);
+            off += k;
+            len -= k;
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        _buffer[0] = (char) c;
+        pass(1);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _out.close();
+    }
+
+    /** Convert the first LEN characters of _buffer and write them. */
+    private void pass(int len) throws IOException {
+        len = EnigmaReader.prepare(_machine.alphabet(), _buffer, 0, len,
+                                   _filter);
+        _machine.convert(_buffer, 0, len, _buffer, 0);
+        _out.write(_buffer, 0, len);
+    }
+
+    /** Number of characters converted at a time. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** Destination of the converted characters. */
+    private final Writer _out;
+    /** Machine converting them. */
+    private final Machine _machine;
+    /** True iff characters not in the alphabet are dropped. */
+    private final boolean _filter;
+    /** Characters being converted. */
+    private final char[] _buffer;
+}
@@ -0,0 +1,387 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A brute-force search for the rotors and setting that produced a
+ *  ciphertext.  Every arrangement of rotors from a catalog is tried
+ *  (a reflector in slot 0, non-moving rotors next, and moving rotors in
+ *  the rightmost slots, with no plugboard) at every setting, and each
+ *  decryption is scored by its index of coincidence, which is high for
+ *  natural-language text and low for random letters.  The work is
+ *  divided among several threads, and the best candidates are kept.
+ *  @author NikkiTrueblood
+ */
+final class KeySearch {
+
+    /** A report of progress through a search. */
+    interface Progress {
+        /** Note that DONE of the TOTAL candidate keys have been tried.
+         *  May be called from any of the searching threads. */
+        void report(long done, long total);
+    }
+
+    /** A search over the rotors in CATALOG (letters from ALPHABET) for
+     *  machines with NUMROTORS slots, NUMPAWLS of which hold moving
+     *  rotors. */
+    KeySearch(Alphabet alphabet, Collection<Rotor> catalog,
+              int numRotors, int numPawls) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _specs = rotorOrders(alphabet, catalog, numRotors, numPawls);
+        _perOrder = 1;
+        for (int k = 1; k < numRotors; k += 1) {
+            _perOrder *= alphabet.size();
+        }
+    }
+
+    /** Use THREADS threads for searching (by default, one per
+     *  processor). */
+    void setThreads(int threads) {
+        if (threads <= 0) {
+            throw error("bad number of threads: %d", threads);
+        }
+        _threads = threads;
+    }
+
+    /** Report progress to PROGRESS, or to nobody if it is null. */
+    void setProgress(Progress progress) {
+        _progress = progress;
+    }
+
+    /** Stop searching as soon as a candidate scores at least TARGET. */
+    void setTarget(double target) {
+        _target = target;
+    }
+
+    /** Stop any search in progress as soon as possible.  It returns the
+     *  best candidates found so far. */
+    void cancel() {
+        _stop = true;
+    }
+
+    /** Return the number of candidate keys a search tries. */
+    long total() {
+        return _perOrder * _specs.size();
+    }
+
+    /** Return the (at most) K best-scoring candidates for CIPHERTEXT,
+     *  best first.  Whitespace in CIPHERTEXT is ignored. */
+    List<Candidate> search(String ciphertext, int k) {
+        if (k <= 0) {
+            throw error("bad number of candidates: %d", k);
+        }
+        int[] cipher = new int[ciphertext.length()];
+        int n = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char c = ciphertext.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                cipher[n] = _alphabet.toInt(c);
+                n += 1;
+            }
+        }
+        cipher = Arrays.copyOf(cipher, n);
+
+        _stop = false;
+        _done.set(0);
+        _nextTask.set(0);
+        ArrayList<Callable<Searcher>> searchers = new ArrayList<>();
+        for (int t = 0; t < _threads; t += 1) {
+            searchers.add(new Searcher(cipher, k));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayList<Candidate> result = new ArrayList<>();
+        try {
+            for (Future<Searcher> future : pool.invokeAll(searchers)) {
+                future.get().collect(result);
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("key search interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("key search failed: %s", excp.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        Collections.sort(result);
+        return new ArrayList<>(result.subList(0, Math.min(k,
+                                                          result.size())));
+    }
+
+    /** Return the index of coincidence of text whose letter counts are
+     *  COUNTS and whose length is N. */
+    static double indexOfCoincidence(int[] counts, int n) {
+        if (n < 2) {
+            return 0.0;
+        }
+        long sum = 0;
+        for (int x : counts) {
+            sum += (long) x * (x - 1);
+        }
+        return (double) sum / ((long) n * (n - 1));
+    }
+
+    /** Return a spec, with no plugboard, for every way of filling
+     *  NUMROTORS slots with distinct rotors from CATALOG (letters from
+     *  ALPHABET): a reflector in slot 0, non-moving rotors after it, and
+     *  moving rotors in the rightmost NUMPAWLS slots. */
+    static ArrayList<MachineSpec> rotorOrders(Alphabet alphabet,
+                                              Collection<Rotor> catalog,
+                                              int numRotors, int numPawls) {
+        if (numRotors < 2 || numPawls < 0 || numPawls >= numRotors) {
+            throw error("bad machine shape: %d rotors, %d pawls",
+                        numRotors, numPawls);
+        }
+        RotorRegistry registry = new RotorRegistry(catalog);
+        List<Rotor> fixed = registry.fixed();
+        List<Rotor> moving = registry.moving();
+        ArrayList<MachineSpec> specs = new ArrayList<>();
+        Rotor[] slots = new Rotor[numRotors];
+        for (Rotor r : registry.reflectors()) {
+            slots[0] = r;
+            arrange(alphabet, slots, 1, numRotors - numPawls, fixed,
+                    moving, new boolean[fixed.size()],
+                    new boolean[moving.size()], specs);
+        }
+        return specs;
+    }
+
+    /** Fill SLOTS from slot K on with every arrangement of the unused
+     *  rotors of FIXED and MOVING (USEDFIXED and USEDMOVING marking
+     *  those already placed), moving rotors going in slot FIRSTMOVING
+     *  and after, and add a spec over ALPHABET for each to SPECS. */
+    private static void arrange(Alphabet alphabet, Rotor[] slots, int k,
+                                int firstMoving,
+                                List<Rotor> fixed, List<Rotor> moving,
+                                boolean[] usedFixed, boolean[] usedMoving,
+                                List<MachineSpec> specs) {
+        if (k == slots.length) {
+            specs.add(new MachineSpec(alphabet, slots,
+                                      new Permutation("", alphabet)));
+            return;
+        }
+        List<Rotor> choices = k >= firstMoving ? moving : fixed;
+        boolean[] used = k >= firstMoving ? usedMoving : usedFixed;
+        for (int i = 0; i < choices.size(); i += 1) {
+            if (!used[i]) {
+                used[i] = true;
+                slots[k] = choices.get(i);
+                arrange(alphabet, slots, k + 1, firstMoving, fixed, moving,
+                        usedFixed, usedMoving, specs);
+                used[i] = false;
+            }
+        }
+    }
+
+    /** One candidate key and the score of its decryption. */
+    static final class Candidate implements Comparable<Candidate> {
+
+        /** A candidate with rotors SPEC, set to SETTING, scoring SCORE. */
+        private Candidate(MachineSpec spec, String setting, double score) {
+            _rotors = new String[spec.numRotors()];
+            for (int k = 0; k < _rotors.length; k += 1) {
+                _rotors[k] = spec.rotor(k).name();
+            }
+            _setting = setting;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my initial setting. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the index of coincidence of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(other._score, _score);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %.5f",
+                                 String.join(" ", _rotors), _setting,
+                                 _score);
+        }
+
+        /** Names of my rotors, reflector first. */
+        private final String[] _rotors;
+        /** My initial setting. */
+        private final String _setting;
+        /** Index of coincidence of my decryption. */
+        private final double _score;
+    }
+
+    /** One searching thread.  It repeatedly claims a task (one rotor
+     *  order with one position of its leftmost non-reflector rotor) and
+     *  tries every setting of the remaining rotors, keeping its best
+     *  candidates in preallocated arrays so that nothing is allocated
+     *  per candidate. */
+    private final class Searcher implements Callable<Searcher> {
+
+        /** A searcher decrypting CIPHER and keeping its K best. */
+        Searcher(int[] cipher, int k) {
+            _cipher = cipher;
+            _counts = new int[_alphabet.size()];
+            _pos = new int[_numRotors];
+            _start = new int[_numRotors];
+            _bestScores = new double[k];
+            _bestOrders = new int[k];
+            _bestSettings = new int[k][_numRotors];
+        }
+
+        @Override
+        public Searcher call() {
+            int size = _alphabet.size();
+            long tasks = (long) _specs.size() * size;
+            long perTask = _perOrder / size;
+            for (long t = _nextTask.getAndIncrement(); t < tasks && !_stop;
+                 t = _nextTask.getAndIncrement()) {
+                int order = (int) (t / size);
+                Arrays.fill(_start, 0);
+                _start[1] = (int) (t % size);
+                long tried = searchTask(order, perTask);
+                long done = _done.addAndGet(tried);
+                if (_progress != null) {
+                    _progress.report(done, total());
+                }
+            }
+            return this;
+        }
+
+        /** Try the first N settings of rotor order ORDER, counting up from
+         *  _start, and return the number tried. */
+        private long searchTask(int order, long n) {
+            MachineKernel kernel = _specs.get(order).kernel();
+            int[] cipher = _cipher;
+            int[] counts = _counts;
+            int[] pos = _pos;
+            for (long i = 0; i < n; i += 1) {
+                if (_stop) {
+                    return i;
+                }
+                System.arraycopy(_start, 0, pos, 0, pos.length);
+                Arrays.fill(counts, 0);
+                for (int c : cipher) {
+                    counts[kernel.convert(pos, c)] += 1;
+                }
+                double score = indexOfCoincidence(counts, cipher.length);
+                if (score > _worst || _found < _bestScores.length) {
+                    keep(score, order);
+                }
+                if (score >= _target) {
+                    _stop = true;
+                }
+                for (int k = pos.length - 1; k > 1; k -= 1) {
+                    _start[k] += 1;
+                    if (_start[k] < counts.length) {
+                        break;
+                    }
+                    _start[k] = 0;
+                }
+            }
+            return n;
+        }
+
+        /** Record the key ORDER, _start as one of my best, with score
+         *  SCORE, displacing my worst if I have enough. */
+        private void keep(double score, int order) {
+            int slot;
+            if (_found < _bestScores.length) {
+                slot = _found;
+                _found += 1;
+            } else {
+                slot = 0;
+                for (int j = 1; j < _found; j += 1) {
+                    if (_bestScores[j] < _bestScores[slot]) {
+                        slot = j;
+                    }
+                }
+            }
+            _bestScores[slot] = score;
+            _bestOrders[slot] = order;
+            System.arraycopy(_start, 0, _bestSettings[slot], 0,
+                             _start.length);
+            _worst = score;
+            for (int j = 0; j < _found; j += 1) {
+                _worst = Math.min(_worst, _bestScores[j]);
+            }
+        }
+
+        /** Add my best candidates to RESULT. */
+        void collect(List<Candidate> result) {
+            for (int j = 0; j < _found; j += 1) {
+                char[] setting = new char[_numRotors - 1];
+                for (int k = 1; k < _numRotors; k += 1) {
+                    setting[k - 1] = _alphabet.toChar(_bestSettings[j][k]);
+                }
+                result.add(new Candidate(_specs.get(_bestOrders[j]),
+                                         new String(setting),
+                                         _bestScores[j]));
+            }
+        }
+
+        /** The ciphertext, as alphabet indices. */
+        private final int[] _cipher;
+        /** Letter counts of the current decryption. */
+        private final int[] _counts;
+        /** Rotor positions while decrypting. */
+        private final int[] _pos;
+        /** Setting being tried. */
+        private final int[] _start;
+        /** Scores of my best candidates. */
+        private final double[] _bestScores;
+        /** Rotor orders (indices into _specs) of my best candidates. */
+        private final int[] _bestOrders;
+        /** Settings of my best candidates. */
+        private final int[][] _bestSettings;
+        /** Number of candidates recorded in _best arrays. */
+        private int _found;
+        /** Lowest score among my best candidates. */
+        private double _worst;
+    }
+
+    /** Alphabet of the rotors and ciphertext. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** One spec for each rotor order to be tried. */
+    private final ArrayList<MachineSpec> _specs;
+    /** Number of settings for each rotor order. */
+    private long _perOrder;
+    /** Number of searching threads. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+    /** Receiver of progress reports, or null. */
+    private Progress _progress;
+    /** Score at which to stop searching. */
+    private double _target = Double.POSITIVE_INFINITY;
+    /** True when searching threads should stop. */
+    private volatile boolean _stop;
+    /** Number of candidate keys tried in the current search. */
+    private final AtomicLong _done = new AtomicLong();
+    /** Index of the next task to be claimed. */
+    private final AtomicLong _nextTask = new AtomicLong();
+}
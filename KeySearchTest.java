@@ -0,0 +1,80 @@
+package enigma;
+
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author NikkiTrueblood
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    private static final String PLAIN =
+        "ITWASTHEBESTOFTIMESITWASTHEWORSTOFTIMESITWASTHEAGEOFWISDOM"
+        + "ITWASTHEAGEOFFOOLISHNESSITWASTHEEPOCHOFBELIEFITWASTHEEPOCH"
+        + "OFINCREDULITYITWASTHESEASONOFLIGHTITWASTHESEASONOFDARKNESS"
+        + "ITWASTHESPRINGOFHOPEITWASTHEWINTEROFDESPAIRWEHADEVERYTHING"
+        + "BEFOREUSWEHADNOTHINGBEFOREUSWEWEREALLGOINGDIRECTTOHEAVEN";
+
+    /** Return the naval rotors that the searches choose among. */
+    private List<Rotor> catalog() {
+        return navalRotors("B", "Beta", "I", "II", "III");
+    }
+
+    private String encrypt(List<Rotor> catalog, String[] rotors,
+                           String setting) {
+        Machine mach = new Machine(AZ, 4, 2, catalog);
+        mach.insertRotors(rotors);
+        mach.setRotors(setting);
+        return mach.convert(PLAIN);
+    }
+
+    @Test
+    public void testSearch() {
+        List<Rotor> catalog = catalog();
+        String cipher = encrypt(catalog, new String[] {"B", "Beta", "III",
+                                                       "I"}, "KQM");
+        KeySearch search = new KeySearch(AZ, catalog, 4, 2);
+        assertEquals(6 * 26 * 26 * 26, search.total());
+        search.setThreads(3);
+        long[] reported = new long[1];
+        search.setProgress((done, total) -> {
+            synchronized (reported) {
+                reported[0] = Math.max(reported[0], done);
+            }
+        });
+        List<KeySearch.Candidate> best = search.search(cipher, 5);
+        assertEquals(5, best.size());
+        assertArrayEquals(new String[] {"B", "Beta", "III", "I"},
+                          best.get(0).rotors());
+        assertEquals("KQM", best.get(0).setting());
+        assertTrue(best.get(0).score() >= best.get(4).score());
+        assertEquals(search.total(), reported[0]);
+    }
+
+    @Test
+    public void testTarget() {
+        List<Rotor> catalog = catalog();
+        String cipher = encrypt(catalog, new String[] {"B", "Beta", "I",
+                                                       "II"}, "AAA");
+        KeySearch search = new KeySearch(AZ, catalog, 4, 2);
+        search.setTarget(0.06);
+        List<KeySearch.Candidate> best = search.search(cipher, 1);
+        assertEquals("AAA", best.get(0).setting());
+    }
+
+    @Test
+    public void testIndexOfCoincidence() {
+        assertEquals(1.0, KeySearch.indexOfCoincidence(new int[] {4, 0}, 4),
+                     1e-9);
+        assertEquals(0.0, KeySearch.indexOfCoincidence(new int[] {1, 1}, 2),
+                     1e-9);
+    }
+}
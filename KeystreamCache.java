@@ -0,0 +1,213 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import static enigma.EnigmaException.*;
+
+/** A cache of keystreams for keys (rotor order, plugboard and starting
+ *  setting) that are used for many messages.  A keystream holds the
+ *  machine's substitution at each keypress from the start, as one
+ *  compact table, so that converting a message under a key seen before
+ *  is a lookup per character, with no stepping.  A table entry costs
+ *  as much to make as converting a character, and there is one for
+ *  each character of the alphabet at each keypress, so tables are made
+ *  only for keys used more than once, and then lazily, as far as the
+ *  longest use so far, up to a limit beyond which keystreams fall back
+ *  to the compiled machine.
+ *  The cache holds a bounded number of keys and evicts the least
+ *  recently used.  It may be shared by threads.
+ *  @author NikkiTrueblood
+ */
+final class KeystreamCache {
+
+    /** A cache of up to MAXKEYS keystreams, each materialized for at
+     *  most MAXPOSITIONS keypresses. */
+    KeystreamCache(int maxKeys, int maxPositions) {
+        if (maxKeys <= 0 || maxPositions <= 0) {
+            throw error("bad keystream cache size: %d keys of %d "
+                        + "positions", maxKeys, maxPositions);
+        }
+        _maxPositions = maxPositions;
+        _keystreams = new LinkedHashMap<String, Keystream>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Keystream> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    /** Return the keystream of MACHINE's current rotors and plugboard
+     *  from its current setting, making it if it is not cached. */
+    synchronized Keystream get(Machine machine) {
+        MachineSpec spec = machine.spec();
+        StringJoiner key = new StringJoiner(" ");
+        for (int k = 0; k < spec.numRotors(); k += 1) {
+            key.add(spec.rotor(k).name());
+        }
+        key.add(spec.plugboard().toString());
+        key.add(machine.setting());
+        String name = key.toString();
+        Keystream keystream = _keystreams.get(name);
+        if (keystream == null) {
+            keystream = new Keystream(spec, spec.newState(machine.setting()),
+                                      _maxPositions);
+            _keystreams.put(name, keystream);
+            _misses += 1;
+        } else {
+            keystream._reused = true;
+        }
+        return keystream;
+    }
+
+    /** Return the number of keys cached. */
+    synchronized int size() {
+        return _keystreams.size();
+    }
+
+    /** Return the number of calls to get that made a new keystream. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** The substitutions of one key at each keypress from its start. */
+    static final class Keystream {
+
+        /** The keystream of SPEC from START, materialized for at most
+         *  MAXPOSITIONS keypresses. */
+        Keystream(MachineSpec spec, MachineState start, int maxPositions) {
+            _spec = spec;
+            _size = spec.alphabet().size();
+            _start = start.copy();
+            _end = start.copy();
+            _maxPositions = maxPositions;
+            if (_size <= BYTE_SYMBOLS) {
+                _bytes = new byte[0];
+            } else {
+                _shorts = new short[0];
+            }
+        }
+
+        /** Convert the LEN characters of SRC starting at OFF into DST
+         *  starting at DSTOFF, as the machine would after POSITION
+         *  keypresses from my start. */
+        void convert(long position, char[] src, int off, int len,
+                     char[] dst, int dstOff) {
+            long time = Metrics.enabled() ? System.nanoTime() : 0;
+            ConversionEvent event = null;
+            if (ConversionEvent.enabled()) {
+                MachineState state = _start.copy();
+                _spec.kernel().skip(state.positions(), position);
+                event = ConversionEvent.begun(len, _spec.setting(state));
+            }
+            Alphabet alpha = _spec.alphabet();
+            long end = 0;
+            if (_reused) {
+                end = Math.min(position + len, _maxPositions);
+            }
+            if (end > _length) {
+                extend((int) end);
+            }
+            int n = (int) Math.max(0, end - position);
+            int size = _size;
+            int row = (int) position * size;
+            byte[] bytes = _bytes;
+            short[] shorts = _shorts;
+            for (int i = 0; i < n; i += 1, row += size) {
+                int c = alpha.toInt(src[off + i]);
+                int e = bytes != null ? bytes[row + c] & BYTE_MASK
+                    : shorts[row + c] & SHORT_MASK;
+                dst[dstOff + i] = alpha.toChar(e);
+            }
+            if (n < len) {
+                MachineState state = _start.copy();
+                _spec.kernel().skip(state.positions(), position + n);
+                _spec.convert(state, src, off + n, len - n, dst, dstOff + n);
+            }
+            ConversionEvent.end(event);
+            if (time != 0) {
+                Metrics.get().conversion(len, System.nanoTime() - time);
+            }
+        }
+
+        /** Return the number of keypresses materialized so far. */
+        int length() {
+            return _length;
+        }
+
+        /** Materialize my tables for at least LENGTH keypresses. */
+        private synchronized void extend(int length) {
+            if (length <= _length) {
+                return;
+            }
+            int target = (int) Math.min(_maxPositions,
+                                        Math.max(length, 2L * _length));
+            int size = _size;
+            byte[] bytes = null;
+            short[] shorts = null;
+            if (_bytes != null) {
+                bytes = new byte[target * size];
+                System.arraycopy(_bytes, 0, bytes, 0, _length * size);
+            } else {
+                shorts = new short[target * size];
+                System.arraycopy(_shorts, 0, shorts, 0, _length * size);
+            }
+            MachineKernel kernel = _spec.kernel();
+            int[] pos = _end.positions();
+            MachineKernel.Fold fold = null;
+            for (int p = _length; p < target; p += 1) {
+                kernel.step(pos);
+                fold = kernel.fold(pos, fold);
+                for (int c = 0; c < size; c += 1) {
+                    int e = kernel.scramble(pos, c, fold);
+                    if (bytes != null) {
+                        bytes[p * size + c] = (byte) e;
+                    } else {
+                        shorts[p * size + c] = (short) e;
+                    }
+                }
+            }
+            _bytes = bytes;
+            _shorts = shorts;
+            _length = target;
+        }
+
+        /** The machine I am the keystream of. */
+        private final MachineSpec _spec;
+        /** Its alphabet size. */
+        private final int _size;
+        /** Positions of its rotors at my start. */
+        private final MachineState _start;
+        /** Positions of its rotors after _length keypresses. */
+        private final MachineState _end;
+        /** Largest number of keypresses to materialize. */
+        private final int _maxPositions;
+        /** For alphabets of at most BYTE_SYMBOLS characters, entry
+         *  P * _size + C is the conversion of C at keypress P; else
+         *  null. */
+        private volatile byte[] _bytes;
+        /** As for _bytes, for larger alphabets; else null. */
+        private volatile short[] _shorts;
+        /** True once my key has been asked for again. */
+        private volatile boolean _reused;
+        /** Number of keypresses materialized.  Written after the tables,
+         *  so that a reader that sees it sees them. */
+        private volatile int _length;
+    }
+
+    /** Largest alphabet whose keystreams are stored in bytes. */
+    private static final int BYTE_SYMBOLS = 256;
+    /** Mask taking a byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+    /** Mask taking a short to its unsigned value. */
+    private static final int SHORT_MASK = 0xffff;
+
+    /** Largest number of keypresses materialized per keystream. */
+    private final int _maxPositions;
+    /** Keystreams by key, least recently used first. */
+    private final Map<String, Keystream> _keystreams;
+    /** Number of keystreams made. */
+    private long _misses;
+}
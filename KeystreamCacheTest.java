@@ -0,0 +1,105 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author NikkiTrueblood
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a machine over AZ at SETTING. */
+    private Machine machine(String setting) {
+        return navalMachine(setting, "(AQ) (EX)", "B", "III", "I");
+    }
+
+    /** Return N random letters of ALPHA, from RANDOM. */
+    private char[] letters(Random random, Alphabet alpha, int n) {
+        char[] text = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            text[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return text;
+    }
+
+    @Test
+    public void testMessages() {
+        KeystreamCache cache = new KeystreamCache(2, 1000);
+        Random random = new Random(9);
+        for (int round = 0; round < 5; round += 1) {
+            char[] text = letters(random, AZ, 1500);
+            char[] expected = text.clone();
+            machine("QZ").convert(expected, 0, text.length, expected, 0);
+            KeystreamCache.Keystream keystream = cache.get(machine("QZ"));
+            char[] result = text.clone();
+            for (int pos = 0; pos < text.length;) {
+                int len = Math.min(random.nextInt(400), text.length - pos);
+                keystream.convert(pos, result, pos, len, result, pos);
+                pos += len;
+            }
+            assertEquals(new String(expected), new String(result));
+            assertEquals(round == 0 ? 0 : 1000, keystream.length());
+        }
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testEviction() {
+        KeystreamCache cache = new KeystreamCache(2, 100);
+        KeystreamCache.Keystream a = cache.get(machine("AA"));
+        cache.get(machine("BB"));
+        assertSame(a, cache.get(machine("AA")));
+        cache.get(machine("CC"));
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get(machine("AA")));
+        cache.get(machine("BB"));
+        assertEquals(4, cache.misses());
+        Machine other = machine("AA");
+        other.setPlugboard(new Permutation("", AZ));
+        assertNotSame(a, cache.get(other));
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        char[] chars = new char[300];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = (char) (0x400 + i);
+        }
+        Alphabet alpha = new Alphabet(new String(chars));
+        Random random = new Random(2);
+        List<Rotor> rotors = new ArrayList<>();
+        int[] pairs = new int[alpha.size()];
+        for (int i = 0; i < pairs.length; i += 2) {
+            pairs[i] = i + 1;
+            pairs[i + 1] = i;
+        }
+        rotors.add(new Reflector("R", new Permutation(pairs, alpha)));
+        int[] wiring = new int[alpha.size()];
+        for (int i = 0; i < wiring.length; i += 1) {
+            wiring[i] = (i * 7 + 3) % wiring.length;
+        }
+        rotors.add(new MovingRotor("M", new Permutation(wiring, alpha),
+                                   String.valueOf(chars[5])));
+        Machine mach = new Machine(alpha, 2, 1, rotors);
+        mach.insertRotors(new String[] { "R", "M" });
+        mach.setRotors(String.valueOf(chars[1]));
+        KeystreamCache cache = new KeystreamCache(1, 50);
+        cache.get(mach);
+        KeystreamCache.Keystream keystream = cache.get(mach);
+        char[] text = letters(random, alpha, 80);
+        char[] result = new char[text.length];
+        keystream.convert(0, text, 0, text.length, result, 0);
+        mach.convert(text, 0, text.length, text, 0);
+        assertArrayEquals(text, result);
+    }
+}
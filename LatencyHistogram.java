@@ -0,0 +1,111 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/** A lock-free histogram of non-negative values (such as latencies in
+ *  nanoseconds) in the manner of an HDR histogram.  Values are counted
+ *  in buckets whose widths grow with the value: each power of two is
+ *  split into SUB_BUCKETS equal parts, so any value is known to within
+ *  1/SUB_BUCKETS of itself while the whole range of a long takes a few
+ *  hundred counters.  Recording is one atomic increment, and any number
+ *  of threads may record at once.
+ *  @author NikkiTrueblood
+ */
+final class LatencyHistogram {
+
+    /** An empty histogram. */
+    LatencyHistogram() {
+        _counts = new AtomicLongArray(BUCKETS);
+        _max = new LongAccumulator(Math::max, 0);
+    }
+
+    /** Count one occurrence of VALUE (negative values count as 0). */
+    void record(long value) {
+        value = Math.max(0, value);
+        _counts.incrementAndGet(bucket(value));
+        _max.accumulate(value);
+    }
+
+    /** Return the number of values recorded. */
+    long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i += 1) {
+            total += _counts.get(i);
+        }
+        return total;
+    }
+
+    /** Return the largest value recorded, or 0 if none. */
+    long max() {
+        return _max.get();
+    }
+
+    /** Return an upper bound, within the bucket precision, of the
+     *  smallest value that at least FRACTION of the recorded values do
+     *  not exceed, or 0 if none were recorded. */
+    long percentile(double fraction) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i += 1) {
+            seen += _counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max());
+            }
+        }
+        return max();
+    }
+
+    /** Forget all recorded values.  Values recorded at the same time
+     *  may or may not be forgotten. */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i += 1) {
+            _counts.set(i, 0);
+        }
+        _max.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%d p90=%d p99=%d max=%d", count(),
+                             percentile(0.5), percentile(0.9),
+                             percentile(0.99), max());
+    }
+
+    /** Return the bucket holding VALUE >= 0. */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Return the largest value in bucket I. */
+    static long highest(int i) {
+        if (i < SUB_BUCKETS) {
+            return i;
+        }
+        int exponent = i / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = i % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /** Log base 2 of the number of buckets per power of two. */
+    private static final int SUB_BITS = 3;
+    /** Number of buckets per power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** Total number of buckets. */
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    /** Number of values recorded in each bucket. */
+    private final AtomicLongArray _counts;
+    /** Largest value recorded. */
+    private final LongAccumulator _max;
+}
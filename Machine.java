@@ -1,7 +1,16 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+import jdk.jfr.EventType;
 
 import static enigma.EnigmaException.*;
 
@@ -13,9 +22,8 @@ class Machine {
     private int _numRotors;
     /** Integer to represent the number of pawls in the machine. */
     private int _numPawls;
-    /** ArrayList of rotors to represent all
-     * the available rotors of the machine. */
-    private ArrayList<Rotor> _allRotors = new ArrayList<Rotor>();
+    /** All the available rotors of the machine, by name. */
+    private final RotorRegistry _allRotors;
     /** Permutation that represents the plugboard. */
     private Permutation _plugboard;
     /** Arraylist of Rotors to represent all the
@@ -26,13 +34,39 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorRegistry(allRotors));
+    }
+
+    /** As for Machine(ALPHA, NUMROTORS, PAWLS, ALLROTORS), but with the
+     *  available rotors given as a registry, which may be shared. */
+    Machine(Alphabet alpha, int numRotors, int pawls,
+            RotorRegistry allRotors) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _numPawls = pawls;
         _plugboard = new Permutation("", _alphabet);
-        for (Rotor r: allRotors) {
-            _allRotors.add(r);
-        }
+        _allRotors = allRotors;
+    }
+
+    /** Return a new machine like me, in its initial state, with the
+     *  same available rotors.  Machines keep their rotor positions to
+     *  themselves, so the copy may be used on another thread. */
+    Machine copy() {
+        Machine copy =
+            new Machine(_alphabet, _numRotors, _numPawls, _allRotors);
+        copy.setCache(_cacheBytes, _cacheOffHeap);
+        return copy;
+    }
+
+    /** Return all the rotors available to me, in the order given to my
+     *  constructor. */
+    List<Rotor> availableRotors() {
+        return _allRotors.rotors();
+    }
+
+    /** Return the registry of the rotors available to me. */
+    RotorRegistry registry() {
+        return _allRotors;
     }
 
     /** Return the number of rotor slots I have. */
@@ -47,16 +81,10 @@ class Machine {
 
     /** Return Rotor #K, where Rotor #0 is the reflector, and Rotor
      *  #(numRotors()-1) is the fast Rotor.  Modifying this Rotor has
-     *  undefined results. */
+     *  undefined results.  The Rotor may be shared with other machines,
+     *  and its own setting is not mine; see setting(). */
     Rotor getRotor(int k) {
-        int i = 0;
-        for (Rotor r:_myRotors) {
-            if (i == k) {
-                return r;
-            }
-            i++;
-        }
-        return _myRotors.get(0);
+        return _myRotors.get(k);
     }
 
     Alphabet alphabet() {
@@ -67,31 +95,63 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
-        for (Rotor r: _allRotors) {
-            if (rotors[0].equals(r.name())) {
-                if (!r.reflecting()) {
-                    throw new EnigmaException("First rotor isn't a reflector.");
-                } else {
-                    _myRotors.add(r);
-                }
+        ArrayList<Rotor> slots = new ArrayList<Rotor>(rotors.length);
+        int movingCounter = 0;
+        for (String name : rotors) {
+            Rotor r = _allRotors.get(name);
+            if (r == null) {
+                throw error("Unknown rotor: %s", name);
             }
-        }
-        for (int i = 1; i < rotors.length; i++) {
-            for (Rotor r: _allRotors) {
-                if (rotors[i].equals(r.name())) {
-                    _myRotors.add(r);
-                }
+            if (slots.isEmpty() && !r.reflecting()) {
+                throw new EnigmaException("First rotor isn't a reflector.");
             }
-        }
-        int movingCounter = 0;
-        for (Rotor r: _myRotors) {
             if (r.rotates()) {
                 movingCounter++;
             }
+            slots.add(r);
         }
         if (movingCounter != _numPawls) {
             throw new EnigmaException("Wrong number of pawls.");
         }
+        _myRotors = slots;
+        _spec = null;
+        _state = new MachineState(_myRotors.size());
+        _start = _state.copy();
+        if (Metrics.enabled()) {
+            Metrics.get().rotorInsertion();
+        }
+        configured("rotors", String.join(" ", rotors));
+    }
+
+    /** Use the rotors and plugboard of SPEC, as made by spec() on a
+     *  machine with my alphabet and number of slots, with all rotors at
+     *  their 0 setting.  Nothing needs to be checked or compiled, so
+     *  this is much cheaper than insertRotors and setPlugboard, but it
+     *  is recorded in the metrics and events as both of them. */
+    void setSpec(MachineSpec spec) {
+        if (spec.alphabet() != _alphabet || spec.numRotors() != _numRotors) {
+            throw error("machine specification does not fit this machine");
+        }
+        _myRotors.clear();
+        for (int k = 0; k < _numRotors; k += 1) {
+            _myRotors.add(spec.rotor(k));
+        }
+        _plugboard = spec.plugboard();
+        _spec = spec;
+        _state = new MachineState(_numRotors);
+        _start = _state.copy();
+        if (Metrics.enabled()) {
+            Metrics.get().rotorInsertion();
+            Metrics.get().plugboardChange();
+        }
+        if (CONFIGURATION.isEnabled()) {
+            String[] names = new String[_numRotors];
+            for (int k = 0; k < _numRotors; k += 1) {
+                names[k] = _myRotors.get(k).name();
+            }
+            configured("rotors", String.join(" ", names));
+            configured("plugboard", _plugboard.toString());
+        }
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -101,13 +161,58 @@ class Machine {
         if (setting.length() != _numRotors - 1) {
             throw new EnigmaException("Incorrect setting length.");
         }
-        for (int i = 0; i < setting.length(); i++) {
-            if (_alphabet.contains(setting.charAt(i))) {
-                _myRotors.get(i + 1).set(setting.charAt(i));
-            } else {
-                throw new EnigmaException("Setting not in alphabet.");
-            }
+        if (_myRotors.size() != _numRotors) {
+            throw new EnigmaException("Rotors not inserted.");
+        }
+        _state = spec().newState(setting);
+        _start = _state.copy();
+        if (Metrics.enabled()) {
+            Metrics.get().rotorSetting();
+        }
+        configured("setting", setting);
+    }
+
+    /** Return the current setting of my rotors, in the form accepted by
+     *  setRotors. */
+    String setting() {
+        return spec().setting(_state);
+    }
+
+    /** Return the immutable specification of my current rotors and
+     *  plugboard, which may be shared with other threads. */
+    MachineSpec spec() {
+        if (_spec == null) {
+            _spec = new MachineSpec(_alphabet,
+                    _myRotors.toArray(new Rotor[0]), _plugboard);
+        }
+        return _spec;
+    }
+
+    /** Set my rotors to the positions they reach after POSITION
+     *  keypresses starting from the setting last given to setRotors
+     *  (or from all rotors at 0 if there was none).  Takes time
+     *  proportional to the number of notch turnovers up to POSITION,
+     *  or less, rather than to POSITION. */
+    void seek(long position) {
+        _state = stateAfter(position);
+    }
+
+    /** Return the setting of my rotors, in the form accepted by
+     *  setRotors, after POSITION keypresses starting from the setting
+     *  last given to setRotors.  Does not change my state. */
+    String stateAt(long position) {
+        return spec().setting(stateAfter(position));
+    }
+
+    /** Return my state after POSITION keypresses from the setting last
+     *  given to setRotors. */
+    private MachineState stateAfter(long position) {
+        if (position < 0) {
+            throw error("negative message position: %d", position);
         }
+        MachineState state = _start.copy();
+        spec().kernel().skip(state.positions(), position);
+        return state;
     }
 
     /** Return the current plugboard's permutation. */
@@ -118,83 +223,415 @@ class Machine {
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        _spec = null;
+        if (Metrics.enabled()) {
+            Metrics.get().plugboardChange();
+        }
+        if (CONFIGURATION.isEnabled()) {
+            configured("plugboard", plugboard.toString());
+        }
+    }
+
+    /** Commit a configuration event of KIND with VALUE, if enabled. */
+    private static void configured(String kind, String value) {
+        if (CONFIGURATION.isEnabled()) {
+            ConfigurationEvent event = new ConfigurationEvent();
+            event.kind = kind;
+            event.value = value;
+            event.commit();
+        }
+    }
+
+    /** Cache my substitutions (see SubstitutionCache) in up to MAXBYTES
+     *  bytes of tables, off the Java heap iff OFFHEAP, when converting
+     *  arrays; or stop caching if MAXBYTES is 0.  Copies of me cache in
+     *  the same way, each with its own tables. */
+    void setCache(long maxBytes, boolean offHeap) {
+        if (maxBytes < 0) {
+            throw error("bad cache size: %d", maxBytes);
+        }
+        _cacheBytes = maxBytes;
+        _cacheOffHeap = offHeap;
+        _cache = null;
+    }
+
+    /** Return the cache of substitutions by my current spec, or null if
+     *  I do not cache. */
+    SubstitutionCache cache() {
+        if (_cacheBytes == 0) {
+            return null;
+        }
+        MachineKernel kernel = spec().kernel();
+        if (_cache == null || _cache.kernel().size() != kernel.size()) {
+            _cache = new SubstitutionCache(kernel, _cacheBytes,
+                                           _cacheOffHeap);
+        } else if (_cache.kernel() != kernel) {
+            _cache.retarget(kernel);
+        }
+        return _cache;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
-            for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
-            }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
-        }
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
-        }
-        c = applyRotors(c);
-        c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
-        }
-        return c;
-    }
-
-    /** Advance all rotors to their next position. */
-    private void advanceRotors() {
-        for (int i = 0; i < _numRotors; i++) {
-            if ((i == _numRotors - 1) || (_myRotors.get(i).rotates()
-                    && _myRotors.get(i + 1).atNotch())) {
-                _myRotors.get(i).advance();
-                if (i < _numRotors - 1) {
-                    _myRotors.get(i + 1).advance();
-                    i++;
-                }
-            }
+        if (Metrics.enabled()) {
+            Metrics.get().character();
         }
+        if (traced()) {
+            return traceConvert(c);
+        }
+        return spec().convert(_state, c);
+    }
+
+    /** Return a ConversionEvent begun for converting LEN characters
+     *  from my current setting, or null if conversion events are not
+     *  enabled, in which case none is allocated. */
+    private ConversionEvent beginConversion(int len) {
+        return ConversionEvent.enabled()
+            ? ConversionEvent.begun(len, setting()) : null;
+    }
+
+    /** Return true iff each keypress must be seen on its own, for the
+     *  trace or for turnover events. */
+    private static boolean traced() {
+        return Trace.enabled() || TURNOVER.isEnabled();
     }
 
-    /** Return the result of applying the rotors to the character C (as an
-     *  index in the range 0..alphabet size - 1). */
-    private int applyRotors(int c) {
-        int updated = c;
-        for (int i = _myRotors.size() - 1; i >= 0; i--) {
-            updated = _myRotors.get(i).convertForward(updated);
+    /** Convert C as for convert(C), recording the keypress in the trace
+     *  and committing an event for each turnover, as enabled. */
+    private int traceConvert(int c) {
+        MachineSpec spec = spec();
+        MachineKernel kernel = spec.kernel();
+        int[] pos = _state.positions();
+        if (TURNOVER.isEnabled()) {
+            int[] before = pos.clone();
+            kernel.step(pos);
+            for (int k = 1; k < pos.length - 1; k += 1) {
+                if (pos[k] != before[k]) {
+                    TurnoverEvent event = new TurnoverEvent();
+                    event.slot = k;
+                    event.rotor = spec.rotor(k).name();
+                    event.setting = spec.setting(_state);
+                    event.commit();
+                }
+            }
+        } else {
+            kernel.step(pos);
         }
-        for (int i = 1; i < _myRotors.size(); i++) {
-            updated = _myRotors.get(i).convertBackward(updated);
+        if (Trace.enabled()) {
+            Trace.buffer().record(spec, pos, c);
         }
-        return updated;
+        return kernel.scramble(pos, c);
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String updated = "";
-        for (int i = 0; i < msg.length(); i++) {
-            int c = _alphabet.toInt(msg.charAt(i));
-            updated += _alphabet.toChar(convert(c));
+        char[] buf = msg.toCharArray();
+        convert(buf, 0, buf.length, buf, 0);
+        return new String(buf);
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF, storing the
+     *  results in DST starting at DSTOFF and updating the state of the
+     *  rotors accordingly.  SRC and DST may be the same array. */
+    void convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        checkRange(src.length, off, len);
+        checkRange(dst.length, dstOff, len);
+        long start = Metrics.enabled() ? System.nanoTime() : 0;
+        ConversionEvent event = beginConversion(len);
+        if (!traced()) {
+            SubstitutionCache cache = cache();
+            if (cache != null) {
+                cache.convert(_state.positions(), src, off, len,
+                              dst, dstOff);
+            } else {
+                spec().convert(_state, src, off, len, dst, dstOff);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                int c = _alphabet.toInt(src[off + i]);
+                dst[dstOff + i] = _alphabet.toChar(traceConvert(c));
+            }
+        }
+        ConversionEvent.end(event);
+        if (start != 0) {
+            Metrics.get().conversion(len, System.nanoTime() - start);
+        }
+    }
+
+    /** Convert the LEN alphabet indices of SRC starting at OFF, storing
+     *  the resulting indices in DST starting at DSTOFF and updating the
+     *  state of the rotors accordingly.  SRC and DST may be the same
+     *  array. */
+    void convert(int[] src, int off, int len, int[] dst, int dstOff) {
+        checkRange(src.length, off, len);
+        checkRange(dst.length, dstOff, len);
+        long start = Metrics.enabled() ? System.nanoTime() : 0;
+        ConversionEvent event = beginConversion(len);
+        if (!traced()) {
+            SubstitutionCache cache = cache();
+            if (cache != null) {
+                cache.convert(_state.positions(), src, off, len,
+                              dst, dstOff);
+            } else {
+                spec().convert(_state, src, off, len, dst, dstOff);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                dst[dstOff + i] = traceConvert(src[off + i]);
+            }
+        }
+        ConversionEvent.end(event);
+        if (start != 0) {
+            Metrics.get().conversion(len, System.nanoTime() - start);
+        }
+    }
+
+    /** Convert characters from SRC into DST, as many as both have
+     *  remaining, advancing both buffers' positions.  Returns the
+     *  number of characters converted. */
+    int convert(CharBuffer src, CharBuffer dst) {
+        int n = Math.min(src.remaining(), dst.remaining());
+        if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+            convert(src.array(), src.arrayOffset() + src.position(), n,
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.position() + n);
+            dst.position(dst.position() + n);
+        } else {
+            long start = Metrics.enabled() ? System.nanoTime() : 0;
+            ConversionEvent event = beginConversion(n);
+            boolean traced = traced();
+            MachineSpec spec = spec();
+            for (int i = 0; i < n; i++) {
+                int c = _alphabet.toInt(src.get());
+                c = traced ? traceConvert(c) : spec.convert(_state, c);
+                dst.put(_alphabet.toChar(c));
+            }
+            ConversionEvent.end(event);
+            if (start != 0) {
+                Metrics.get().conversion(n, System.nanoTime() - start);
+            }
+        }
+        return n;
+    }
+
+    /** Convert the LEN bytes of SRC starting at OFF, storing the
+     *  results in DST starting at DSTOFF and updating the state of the
+     *  rotors accordingly.  Each byte B stands for alphabet index
+     *  B & 0xff, so my alphabet must have Alphabet.BYTE_VALUES
+     *  characters (see Alphabet.bytes()).  SRC and DST may be the same
+     *  array. */
+    void convert(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        checkRange(src.length, off, len);
+        checkRange(dst.length, dstOff, len);
+        checkBytes();
+        long start = Metrics.enabled() ? System.nanoTime() : 0;
+        ConversionEvent event = beginConversion(len);
+        if (!traced()) {
+            SubstitutionCache cache = cache();
+            if (cache != null) {
+                cache.convert(_state.positions(), src, off, len,
+                              dst, dstOff);
+            } else {
+                spec().convert(_state, src, off, len, dst, dstOff);
+            }
+        } else {
+            for (int i = 0; i < len; i++) {
+                dst[dstOff + i] = (byte) traceConvert(src[off + i] & 0xff);
+            }
+        }
+        ConversionEvent.end(event);
+        if (start != 0) {
+            Metrics.get().conversion(len, System.nanoTime() - start);
+        }
+    }
+
+    /** Convert bytes from SRC into DST as for the byte[] convert, as
+     *  many as both have remaining, advancing both buffers' positions.
+     *  Returns the number of bytes converted. */
+    int convert(ByteBuffer src, ByteBuffer dst) {
+        int n = Math.min(src.remaining(), dst.remaining());
+        if (src.hasArray() && dst.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(), n,
+                    dst.array(), dst.arrayOffset() + dst.position());
+            src.position(src.position() + n);
+            dst.position(dst.position() + n);
+        } else {
+            checkBytes();
+            if (dst.isReadOnly()) {
+                throw new ReadOnlyBufferException();
+            }
+            long start = Metrics.enabled() ? System.nanoTime() : 0;
+            ConversionEvent event = beginConversion(n);
+            if (!traced()) {
+                spec().convert(_state, src, dst, n);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    dst.put((byte) traceConvert(src.get() & 0xff));
+                }
+            }
+            ConversionEvent.end(event);
+            if (start != 0) {
+                Metrics.get().conversion(n, System.nanoTime() - start);
+            }
+        }
+        return n;
+    }
+
+    /** Check that my alphabet is one whose indices are bytes. */
+    private void checkBytes() {
+        if (_alphabet.size() != Alphabet.BYTE_VALUES) {
+            throw error("byte conversion needs an alphabet of %d "
+                        + "characters", Alphabet.BYTE_VALUES);
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG as for convert(MSG), but
+     *  dividing the work among the threads of the common fork/join
+     *  pool. */
+    String convertParallel(String msg) {
+        char[] buf = msg.toCharArray();
+        convertParallel(buf, 0, buf.length, buf, 0);
+        return new String(buf);
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF into DST
+     *  starting at DSTOFF, exactly as convert would, but in parallel.
+     *  The message is divided into chunks, each chunk's starting rotor
+     *  positions are computed independently with seek-style skipping,
+     *  and the chunks are converted on the common fork/join pool.  On
+     *  return my rotors are where the sequential conversion would have
+     *  left them.  SRC and DST may be the same array, but if the two
+     *  ranges then overlap at different offsets, or if SRC holds a
+     *  character not in my alphabet, the conversion is done by convert
+     *  instead, so that the results, the error and the final rotor
+     *  positions are exactly those of convert. */
+    void convertParallel(char[] src, int off, int len,
+                         char[] dst, int dstOff) {
+        checkRange(src.length, off, len);
+        checkRange(dst.length, dstOff, len);
+        boolean overlap = src == dst && off != dstOff
+            && Math.abs(off - dstOff) < len;
+        if (traced() || len < 2 * PARALLEL_CHUNK || overlap
+            || !IntStream.range(off, off + len).parallel()
+                .allMatch(i -> _alphabet.contains(src[i]))) {
+            convert(src, off, len, dst, dstOff);
+            return;
+        }
+        long time = Metrics.enabled() ? System.nanoTime() : 0;
+        ConversionEvent event = beginConversion(len);
+        MachineKernel kernel = spec().kernel();
+        int[] start = _state.positions().clone();
+        ForkJoinPool.commonPool().invoke(new ParallelConversion(kernel,
+                start, src, off, dst, dstOff, 0, len));
+        kernel.skip(_state.positions(), len);
+        ConversionEvent.end(event);
+        if (time != 0) {
+            Metrics.get().conversion(len, System.nanoTime() - time);
+        }
+    }
+
+    /** Converts one range of a message for convertParallel, splitting
+     *  itself in half until ranges are at most PARALLEL_CHUNK long. */
+    private static class ParallelConversion extends RecursiveAction {
+        /** Convert characters LO through HI - 1 of the message at SRC[OFF]
+         *  into DST[DSTOFF] using KERNEL, where START holds the rotor
+         *  positions before the message's first character. */
+        ParallelConversion(MachineKernel kernel, int[] start,
+                           char[] src, int off, char[] dst, int dstOff,
+                           int lo, int hi) {
+            _kernel = kernel;
+            _start = start;
+            _src = src;
+            _off = off;
+            _dst = dst;
+            _dstOff = dstOff;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= PARALLEL_CHUNK) {
+                int[] pos = _start.clone();
+                _kernel.skip(pos, _lo);
+                _kernel.convert(pos, _src, _off + _lo, _hi - _lo,
+                                _dst, _dstOff + _lo);
+            } else {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new ParallelConversion(_kernel, _start, _src,
+                                                 _off, _dst, _dstOff,
+                                                 _lo, mid),
+                          new ParallelConversion(_kernel, _start, _src,
+                                                 _off, _dst, _dstOff,
+                                                 mid, _hi));
+            }
+        }
+
+        /** Compiled machine to convert with. */
+        private final MachineKernel _kernel;
+        /** Rotor positions at the start of the whole message. */
+        private final int[] _start;
+        /** Source and destination arrays. */
+        private final char[] _src, _dst;
+        /** Offsets of the whole message in _src and _dst. */
+        private final int _off, _dstOff;
+        /** The range of the message I convert. */
+        private final int _lo, _hi;
+    }
+
+    /** Check that [OFF, OFF + LEN) lies within an array of length
+     *  LENGTH. */
+    private static void checkRange(int length, int off, int len) {
+        if (off < 0 || len < 0 || off > length - len) {
+            throw new IndexOutOfBoundsException("range [" + off + ", "
+                    + off + " + " + len + ") out of bounds for length "
+                    + length);
         }
-        return updated;
     }
 
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
     public boolean inAllRotors(String n) {
-        for (Rotor r: _allRotors) {
-            if (r.name().equals(n)) {
-                return true;
-            }
-        }
-        return false;
+        return _allRotors.contains(n);
     }
     public void resetRotors() {
-        _myRotors = new ArrayList<Rotor>(_numRotors);
+        _myRotors.clear();
+        _spec = null;
+        _state = null;
+        _start = null;
     }
+
+    /** Immutable form of my rotors and plugboard, or null if it must be
+     *  rebuilt. */
+    private MachineSpec _spec;
+
+    /** Current positions of my rotors. */
+    private MachineState _state;
+
+    /** Positions of my rotors as given by the last call to setRotors. */
+    private MachineState _start;
+
+    /** Type of the events committed for turnovers. */
+    private static final EventType TURNOVER =
+        EventType.getEventType(TurnoverEvent.class);
+
+    /** Type of the events committed for configuration changes. */
+    private static final EventType CONFIGURATION =
+        EventType.getEventType(ConfigurationEvent.class);
+
+    /** Bytes of substitution tables to cache in, or 0 for none. */
+    private long _cacheBytes;
+
+    /** True iff the substitution tables are kept off the heap. */
+    private boolean _cacheOffHeap;
+
+    /** Substitution cache, or null if not yet made. */
+    private SubstitutionCache _cache;
+
+    /** Largest number of characters converted as one parallel task. */
+    private static final int PARALLEL_CHUNK = 1 << 16;
 }
@@ -0,0 +1,228 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** A precompiled machine configuration stored in a compact binary
+ *  image.  An image holds what a configuration file describes (the
+ *  alphabet, the numbers of slots and pawls, and every rotor's kind,
+ *  name, notches and wiring), already checked and with each wiring
+ *  stored as a table rather than as cycles, so that loading one is a
+ *  matter of mapping the file and copying numbers out of it.
+ *
+ *  The layout, in big-endian order, is a header and then a body.  The
+ *  header is the long SIGNATURE, the int VERSION, and the int length
+ *  and int CRC-32 of the body.  The body is the alphabet (an int count
+ *  and that many chars), the int numbers of slots and pawls, and an
+ *  int count of rotors, each of them a kind byte ('R', 'N' or 'M'),
+ *  its name and notches (each an int count and that many chars) and
+ *  its wiring (one char per alphabet index, giving the index it maps
+ *  to).  The first byte of SIGNATURE cannot start a line of text in
+ *  ASCII or UTF-8, so that no configuration is taken for an image, and
+ *  the length and checksum reject an image that has been cut short or
+ *  damaged before any of it is believed.
+ *  @author NikkiTrueblood
+ */
+final class MachineImage {
+
+    /** Not instantiable. */
+    private MachineImage() {
+    }
+
+    /** Write an image of the configuration of MACHINE (its alphabet,
+     *  shape and available rotors) to the file named NAME. */
+    static void write(Machine machine, String name) {
+        ByteBuffer image = encode(machine);
+        try (FileChannel out = FileChannel.open(Paths.get(name),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (image.hasRemaining()) {
+                out.write(image);
+            }
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return an image of the configuration of MACHINE, ready to be
+     *  read. */
+    static ByteBuffer encode(Machine machine) {
+        Alphabet alpha = machine.alphabet();
+        List<Rotor> rotors = machine.availableRotors();
+        int size = HEADER_BYTES + 3 * INT_BYTES + charsBytes(alpha.size());
+        for (Rotor r : rotors) {
+            size += 1 + charsBytes(r.name().length())
+                + charsBytes(r.notches().length()) + 2 * alpha.size();
+        }
+        ByteBuffer image = ByteBuffer.allocate(size);
+        image.putLong(SIGNATURE).putInt(VERSION)
+            .putInt(size - HEADER_BYTES).putInt(0);
+        image.putInt(alpha.size());
+        for (int i = 0; i < alpha.size(); i += 1) {
+            image.putChar(alpha.toChar(i));
+        }
+        image.putInt(machine.numRotors()).putInt(machine.numPawls());
+        image.putInt(rotors.size());
+        for (Rotor r : rotors) {
+            image.put(r.reflecting() ? REFLECTOR
+                      : r.rotates() ? MOVING : FIXED);
+            putChars(image, r.name());
+            putChars(image, r.notches());
+            for (int i = 0; i < alpha.size(); i += 1) {
+                image.putChar((char) r.permutation().permute(i));
+            }
+        }
+        image.flip();
+        image.putInt(HEADER_BYTES - INT_BYTES,
+                     checksum(image, HEADER_BYTES, size));
+        return image;
+    }
+
+    /** Return true iff the file named NAME starts like an image: that
+     *  is, with the first byte of SIGNATURE, which cannot start a
+     *  configuration.  Whether the rest of its header is valid is for
+     *  read to say. */
+    static boolean isImage(String name) {
+        try (FileChannel in = FileChannel.open(Paths.get(name))) {
+            ByteBuffer start = ByteBuffer.allocate(1);
+            while (start.hasRemaining() && in.read(start) >= 0) {
+                continue;
+            }
+            return start.position() == 1
+                && start.get(0) == (byte) (SIGNATURE >>> SIGNATURE_SHIFT);
+        } catch (IOException | InvalidPathException excp) {
+            return false;
+        }
+    }
+
+    /** Return a machine configured by the image in the file named
+     *  NAME, which is mapped into memory rather than read. */
+    static Machine read(String name) {
+        try (FileChannel in = FileChannel.open(Paths.get(name))) {
+            MappedByteBuffer image =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            return decode(image);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a machine configured by the image in IMAGE, from its
+     *  position on. */
+    static Machine decode(ByteBuffer image) {
+        try {
+            if (image.getLong() != SIGNATURE) {
+                throw error("not a machine image");
+            }
+            int version = image.getInt();
+            if (version != VERSION) {
+                throw error("unsupported machine image version %d",
+                            version);
+            }
+            int length = image.getInt();
+            int sum = image.getInt();
+            if (length < 0 || length > image.remaining()) {
+                throw error("machine image truncated");
+            }
+            int start = image.position();
+            if (checksum(image, start, start + length) != sum) {
+                throw error("corrupt machine image");
+            }
+            Alphabet alpha = new Alphabet(getChars(image));
+            int numRotors = image.getInt();
+            int numPawls = image.getInt();
+            int count = image.getInt();
+            if (count < 0) {
+                throw error("corrupt machine image");
+            }
+            List<Rotor> rotors = new ArrayList<>();
+            int[] wiring = new int[alpha.size()];
+            for (int k = 0; k < count; k += 1) {
+                byte kind = image.get();
+                String rotorName = getChars(image);
+                String notches = getChars(image);
+                for (int i = 0; i < wiring.length; i += 1) {
+                    wiring[i] = image.getChar();
+                }
+                Permutation perm = new Permutation(wiring, alpha);
+                if (kind == REFLECTOR) {
+                    rotors.add(new Reflector(rotorName, perm));
+                } else if (kind == FIXED) {
+                    rotors.add(new FixedRotor(rotorName, perm));
+                } else if (kind == MOVING) {
+                    rotors.add(new MovingRotor(rotorName, perm, notches));
+                } else {
+                    throw error("corrupt machine image");
+                }
+            }
+            return new Machine(alpha, numRotors, numPawls, rotors);
+        } catch (BufferUnderflowException excp) {
+            throw error("machine image truncated");
+        }
+    }
+
+    /** Return the CRC-32 of the bytes of IMAGE from START to END. */
+    private static int checksum(ByteBuffer image, int start, int end) {
+        ByteBuffer body = image.duplicate();
+        body.limit(end).position(start);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    /** Return the number of bytes taken by putChars of N chars. */
+    private static int charsBytes(int n) {
+        return INT_BYTES + 2 * n;
+    }
+
+    /** Put the length of S and then its chars into IMAGE. */
+    private static void putChars(ByteBuffer image, String s) {
+        image.putInt(s.length());
+        for (int i = 0; i < s.length(); i += 1) {
+            image.putChar(s.charAt(i));
+        }
+    }
+
+    /** Return a String written by putChars, read from IMAGE. */
+    private static String getChars(ByteBuffer image) {
+        int n = image.getInt();
+        if (n < 0 || 2L * n > image.remaining()) {
+            throw error("machine image truncated");
+        }
+        char[] chars = new char[n];
+        image.asCharBuffer().get(chars);
+        image.position(image.position() + 2 * n);
+        return new String(chars);
+    }
+
+    /** First long of every image: a byte that is not text, "ENG", and
+     *  the line ends and end-of-file mark that text transfers mangle. */
+    static final long SIGNATURE = 0x89454e470d0a1a0aL;
+    /** Version of the layout written by this class. */
+    static final int VERSION = 2;
+
+    /** Kind byte of a reflector. */
+    private static final byte REFLECTOR = 'R';
+    /** Kind byte of a non-moving rotor. */
+    private static final byte FIXED = 'N';
+    /** Kind byte of a moving rotor. */
+    private static final byte MOVING = 'M';
+    /** Size of an int in an image. */
+    private static final int INT_BYTES = 4;
+    /** Size of the header of an image. */
+    private static final int HEADER_BYTES = 8 + 3 * INT_BYTES;
+    /** Shift that brings the first byte of SIGNATURE to the bottom. */
+    private static final int SIGNATURE_SHIFT = 56;
+}
@@ -0,0 +1,102 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineImage class.
+ *  @author NikkiTrueblood
+ */
+public class MachineImageTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the machine with the rotors of convert, not yet
+     *  inserted. */
+    private Machine machine() {
+        return navalMachine(null, null, "B", "Beta", "III", "IV", "I");
+    }
+
+    private String convert(Machine mach) {
+        mach.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        mach.setRotors("AXLE");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                          mach.alphabet()));
+        return mach.convert("FROMHISSHOULDERHIAWATHA");
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Machine original = machine();
+        Machine copy = MachineImage.decode(MachineImage.encode(original));
+        assertEquals(5, copy.numRotors());
+        assertEquals(3, copy.numPawls());
+        assertEquals(UPPER_STRING.length(), copy.alphabet().size());
+        List<Rotor> rotors = copy.availableRotors();
+        assertEquals(5, rotors.size());
+        assertTrue(rotors.get(0).reflecting());
+        assertFalse(rotors.get(1).rotates());
+        assertEquals("Beta", rotors.get(1).name());
+        assertEquals("J", rotors.get(3).notches());
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", convert(copy));
+        copy.resetRotors();
+        assertEquals(convert(original), convert(copy));
+    }
+
+    /** Assert that decoding IMAGE fails with MESSAGE. */
+    private void assertRejected(ByteBuffer image, String message) {
+        try {
+            MachineImage.decode(image);
+            fail("bad image accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(message, excp.getMessage());
+        }
+    }
+
+    /** Return a copy of IMAGE with the int at INDEX replaced by VALUE. */
+    private ByteBuffer patch(ByteBuffer image, int index, int value) {
+        ByteBuffer result = ByteBuffer.allocate(image.limit());
+        result.put(image.duplicate()).flip();
+        return result.putInt(index, value);
+    }
+
+    @Test
+    public void testBadImages() {
+        ByteBuffer image = MachineImage.encode(machine());
+        ByteBuffer truncated = image.duplicate();
+        truncated.limit(image.limit() - 1);
+        assertRejected(truncated, "machine image truncated");
+        assertRejected(patch(image, image.limit() - 4, 0x410041),
+                       "corrupt machine image");
+        assertRejected(patch(image, 0, 0x456e6967), "not a machine image");
+        assertRejected(patch(image, 8, 1),
+                       "unsupported machine image version 1");
+        assertRejected(patch(image, 12, -1), "machine image truncated");
+    }
+
+    @Test
+    public void testIsImage() throws IOException {
+        Path file = Files.createTempFile("enigma", ".img");
+        try {
+            Files.write(file, ("Enigmatic\n 1 0\n R R (En) (ig) (ma) (ti)"
+                               + " (c)\n").getBytes(StandardCharsets.UTF_8));
+            assertFalse(MachineImage.isImage(file.toString()));
+            MachineImage.write(machine(), file.toString());
+            assertTrue(MachineImage.isImage(file.toString()));
+            assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                         convert(MachineImage.read(file.toString())));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
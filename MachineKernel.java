@@ -0,0 +1,492 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/** The compiled form of a configured Enigma machine: its reflector,
+ *  rotors and plugboard flattened into primitive tables so that a
+ *  keypress is a short loop of array loads with no virtual calls.
+ *  A kernel is immutable; the rotor positions it operates on are kept
+ *  by the caller in an int array with one entry per slot, slot 0 being
+ *  the reflector.
+ *
+ *  The reflector and any fixed rotors next to it never move during a
+ *  message, and the moving rotors to the left of the middle one turn
+ *  only every few hundred keypresses, so that part of the stack is a
+ *  single permutation for long runs: the reflector's wiring conjugated
+ *  by each rotor's in turn.  That permutation is composed into a table
+ *  (a Fold) and used in place of their passes, until one of them
+ *  turns.  The fold of the never-moving slots alone is remembered for
+ *  the most recent setting, so that each message starts from it.
+ *  @author NikkiTrueblood
+ */
+final class MachineKernel {
+
+    /** A kernel for the machine whose slots hold ROTORS (ROTORS[0] being
+     *  the reflector) and whose plugboard is PLUGBOARD, all over
+     *  ALPHABET. */
+    MachineKernel(Alphabet alphabet, Rotor[] rotors, Permutation plugboard) {
+        int n = alphabet.size();
+        _alphabet = alphabet;
+        _size = n;
+        _numRotors = rotors.length;
+        _forward = new int[_numRotors * 2 * n];
+        _backward = new int[_numRotors * 2 * n];
+        _notch = new boolean[_numRotors * n];
+        _rotates = new boolean[_numRotors];
+        _plugboard = new int[n];
+        _wrap = new int[2 * n];
+        for (int i = 0; i < 2 * n; i++) {
+            _wrap[i] = i % n;
+        }
+        for (int i = 0; i < n; i++) {
+            _plugboard[i] = plugboard.permute(i);
+        }
+        _toNotch = new long[_numRotors * n];
+        int fixed = 0;
+        while (fixed < _numRotors && !rotors[fixed].rotates()) {
+            fixed += 1;
+        }
+        _static = fixed;
+        _perms = new Permutation[_numRotors];
+        for (int k = 0; k < _numRotors; k++) {
+            Permutation perm = rotors[k].permutation();
+            for (int i = 0; i < 2 * n; i++) {
+                _forward[2 * n * k + i] = perm.permute(i % n) + n;
+                _backward[2 * n * k + i] = perm.invert(i % n) + n;
+            }
+            _rotates[k] = rotors[k].rotates();
+            _perms[k] = perm;
+            String notches = rotors[k].notches();
+            for (int j = 0; j < notches.length(); j++) {
+                if (alphabet.contains(notches.charAt(j))) {
+                    _notch[k * n + alphabet.toInt(notches.charAt(j))] = true;
+                }
+            }
+            for (int p = 0; p < n; p++) {
+                _toNotch[k * n + p] = NEVER;
+                for (int d = 0; d < n; d++) {
+                    if (_notch[k * n + (p + d) % n]) {
+                        _toNotch[k * n + p] = d;
+                        break;
+                    }
+                }
+            }
+        }
+        long states = 1;
+        for (int k = 0; k < _numRotors && states > 0; k++) {
+            states = states <= Long.MAX_VALUE / n ? states * n : -1;
+        }
+        _packable = states > 0;
+        _folded = foldable();
+    }
+
+    /** Return the alphabet I convert. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of rotor slots, including the reflector. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return true iff the rotor in slot K has a ratchet. */
+    boolean rotates(int k) {
+        return _rotates[k];
+    }
+
+    /** Return true iff the rotor in slot K is at a notch when in
+     *  position POSN. */
+    boolean atNotch(int k, int posn) {
+        return _notch[k * _size + posn];
+    }
+
+    /** Advance the rotor positions POS by one keypress, with the same
+     *  pawl and double-stepping rules as Machine. */
+    void step(int[] pos) {
+        int last = _numRotors - 1;
+        for (int i = 0; i < last; i++) {
+            if (_rotates[i] && _notch[(i + 1) * _size + pos[i + 1]]) {
+                pos[i] = _wrap[pos[i] + 1];
+                if (_rotates[i + 1]) {
+                    pos[i + 1] = _wrap[pos[i + 1] + 1];
+                }
+                i += 1;
+                if (i == last) {
+                    return;
+                }
+            }
+        }
+        if (_rotates[last]) {
+            pos[last] = _wrap[pos[last] + 1];
+        }
+    }
+
+    /** Advance the rotor positions POS by N keypresses, giving the same
+     *  result as N calls to step(POS) without making them one at a time.
+     *  Between keypresses at which some rotor other than the fast one
+     *  moves (events), only the fast rotor turns, so the distance to the
+     *  next event is read from the notch tables and skipped at once.
+     *  Event states are remembered, and once one repeats, whole cycles
+     *  of the stepping sequence are skipped arithmetically.  */
+    void skip(int[] pos, long n) {
+        HashMap<Long, Long> seen = null;
+        boolean remember = _packable;
+        long done = 0;
+        while (done < n) {
+            long quiet = quietSteps(pos);
+            if (quiet >= n - done) {
+                turnFast(pos, n - done);
+                return;
+            }
+            turnFast(pos, quiet);
+            done += quiet;
+            if (remember) {
+                if (seen == null) {
+                    seen = new HashMap<>();
+                }
+                Long previous = seen.put(pack(pos), done);
+                if (previous != null) {
+                    long cycle = done - previous;
+                    done += (n - done) / cycle * cycle;
+                    remember = false;
+                    if (done == n) {
+                        return;
+                    }
+                }
+            }
+            step(pos);
+            done += 1;
+        }
+    }
+
+    /** Return the number of keypresses from positions POS during which
+     *  only the fast rotor moves, or NEVER if no other rotor will ever
+     *  move. */
+    long quietSteps(int[] pos) {
+        int last = _numRotors - 1;
+        for (int i = 0; i < last - 1; i++) {
+            if (_rotates[i] && _notch[(i + 1) * _size + pos[i + 1]]) {
+                return 0;
+            }
+        }
+        if (last == 0 || !_rotates[last - 1]) {
+            return NEVER;
+        }
+        long d = _toNotch[last * _size + pos[last]];
+        if (!_rotates[last] && d != 0) {
+            return NEVER;
+        }
+        return d;
+    }
+
+    /** Turn the fast rotor at POS forward N positions, if it rotates. */
+    private void turnFast(int[] pos, long n) {
+        int last = _numRotors - 1;
+        if (_rotates[last]) {
+            pos[last] = (int) ((pos[last] + n % _size) % _size);
+        }
+    }
+
+    /** Return positions POS packed into a single number. */
+    private long pack(int[] pos) {
+        long key = 0;
+        for (int k = 0; k < _numRotors; k++) {
+            key = key * _size + pos[k];
+        }
+        return key;
+    }
+
+    /** Return the number of leading slots, starting with the
+     *  reflector's, whose rotors never move. */
+    int staticSlots() {
+        return _static;
+    }
+
+    /** Return the number of leading slots composed into each Fold, or 0
+     *  if I do not fold. */
+    int foldedSlots() {
+        return _folded;
+    }
+
+    /** Return the number of leading slots worth folding: the static
+     *  ones, and also those left of the middle rotor if they turn
+     *  rarely enough (at most once in 2 * size() keypresses, by the
+     *  notches of the fast and middle rotors) that composing a table
+     *  each time they do costs less than it saves; or 0 if fewer than
+     *  two slots qualify or positions do not pack into a long. */
+    private int foldable() {
+        int last = _numRotors - 1;
+        int result = _static;
+        if (_static >= 1 && last - 1 > _static) {
+            long turnovers = 2L * notches(last) * notches(last - 1);
+            if (turnovers <= _size) {
+                result = last - 1;
+            }
+        }
+        return result >= 2 && _packable ? result : 0;
+    }
+
+    /** Return the number of notches of the rotor in slot K. */
+    private int notches(int k) {
+        int result = 0;
+        for (int p = 0; p < _size; p++) {
+            if (_notch[k * _size + p]) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the fold of the leading foldedSlots() slots at positions
+     *  POS, or null if I do not fold.  LAST is a fold previously
+     *  returned by this kernel, or null; it is returned again if those
+     *  slots are where they were for it, so callers keep the fold they
+     *  have and call this again only when some rotor other than the
+     *  fast one may have moved (see quietSteps). */
+    Fold fold(int[] pos, Fold last) {
+        if (_folded == 0) {
+            return null;
+        }
+        long key = 0;
+        for (int k = 0; k < _folded; k++) {
+            key = key * _size + pos[k];
+        }
+        if (last != null && last._key == key) {
+            return last;
+        }
+        long staticKey = 0;
+        for (int k = 0; k < _static; k++) {
+            staticKey = staticKey * _size + pos[k];
+        }
+        Fold base = _staticFold;
+        if (base == null || base._key != staticKey) {
+            base = new Fold(staticKey, compose(pos, 0, _static, null));
+            _staticFold = base;
+        }
+        if (_folded == _static) {
+            return base;
+        }
+        return new Fold(key, compose(pos, _static, _folded, base._perm));
+    }
+
+    /** Return the permutation of the slots below TO at positions POS,
+     *  from the signal's entering slot TO - 1 through the reflector and
+     *  back out, given INNER, that of the slots below FROM (null if FROM
+     *  is 0). */
+    private Permutation compose(int[] pos, int from, int to,
+                                Permutation inner) {
+        Permutation result = inner;
+        for (int k = from; k < to; k++) {
+            Permutation stage = _perms[k].shifted(pos[k]);
+            if (result == null) {
+                result = stage;
+            } else {
+                result = stage.inverse().compose(result.compose(stage));
+            }
+        }
+        return result;
+    }
+
+    /** Return the result of passing index C through the plugboard, the
+     *  rotors at positions POS, the reflector and back, without
+     *  stepping.  This makes every pass; for many characters at the
+     *  same positions, use the form taking a Fold. */
+    int scramble(int[] pos, int c) {
+        return scramble(pos, c, null);
+    }
+
+    /** Return scramble(POS, C), using FOLD, which is null or
+     *  fold(POS, ...), in place of the slots it covers. */
+    int scramble(int[] pos, int c, Fold fold) {
+        int n = _size, twoN = 2 * n;
+        int[] fwd = _forward, bwd = _backward, wrap = _wrap;
+        int bottom = fold == null ? 0 : _folded;
+        c = _plugboard[c];
+        for (int k = _numRotors - 1; k >= bottom; k--) {
+            int s = pos[k];
+            c = wrap[fwd[twoN * k + c + s] - s];
+        }
+        if (fold != null) {
+            c = fold._table[c];
+        } else {
+            bottom = 1;
+        }
+        for (int k = bottom; k < _numRotors; k++) {
+            int s = pos[k];
+            c = wrap[bwd[twoN * k + c + s] - s];
+        }
+        return _plugboard[c];
+    }
+
+    /** Return the number of keypresses, at most LIMIT, from positions
+     *  POS, just stepped to, during which no rotor but the fast one
+     *  moves, counting the one that reached POS. */
+    private int run(int[] pos, int limit) {
+        return (int) Math.min(limit, Math.min(quietSteps(pos), limit) + 1);
+    }
+
+    /** Step the rotors at POS and return the conversion of index C. */
+    int convert(int[] pos, int c) {
+        step(pos);
+        return scramble(pos, c);
+    }
+
+    /** Convert the LEN indices of SRC starting at OFF into DST starting
+     *  at DSTOFF, stepping the rotors at POS before each one. */
+    void convert(int[] pos, int[] src, int off, int len,
+                 int[] dst, int dstOff) {
+        Fold fold = null;
+        int i = 0;
+        while (i < len) {
+            step(pos);
+            fold = fold(pos, fold);
+            int end = i + run(pos, len - i);
+            dst[dstOff + i] = scramble(pos, src[off + i], fold);
+            for (i += 1; i < end; i++) {
+                step(pos);
+                dst[dstOff + i] = scramble(pos, src[off + i], fold);
+            }
+        }
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF into DST
+     *  starting at DSTOFF, stepping the rotors at POS before each one. */
+    void convert(int[] pos, char[] src, int off, int len,
+                 char[] dst, int dstOff) {
+        Alphabet alpha = _alphabet;
+        Fold fold = null;
+        int i = 0;
+        while (i < len) {
+            step(pos);
+            fold = fold(pos, fold);
+            int end = i + run(pos, len - i);
+            int c = alpha.toInt(src[off + i]);
+            dst[dstOff + i] = alpha.toChar(scramble(pos, c, fold));
+            for (i += 1; i < end; i++) {
+                step(pos);
+                c = alpha.toInt(src[off + i]);
+                dst[dstOff + i] = alpha.toChar(scramble(pos, c, fold));
+            }
+        }
+    }
+
+    /** Convert the LEN bytes of SRC starting at OFF into DST starting at
+     *  DSTOFF, stepping the rotors at POS before each one.  Each byte B
+     *  stands for index B & 0xff, so my alphabet must have
+     *  Alphabet.BYTE_VALUES characters. */
+    void convert(int[] pos, byte[] src, int off, int len,
+                 byte[] dst, int dstOff) {
+        Fold fold = null;
+        int i = 0;
+        while (i < len) {
+            step(pos);
+            fold = fold(pos, fold);
+            int end = i + run(pos, len - i);
+            int c = src[off + i] & BYTE_MASK;
+            dst[dstOff + i] = (byte) scramble(pos, c, fold);
+            for (i += 1; i < end; i++) {
+                step(pos);
+                c = src[off + i] & BYTE_MASK;
+                dst[dstOff + i] = (byte) scramble(pos, c, fold);
+            }
+        }
+    }
+
+    /** Convert LEN bytes from SRC into DST, starting at their positions
+     *  and advancing them, as for the byte[] convert.  For buffers
+     *  without accessible arrays, such as direct buffers. */
+    void convert(int[] pos, ByteBuffer src, ByteBuffer dst, int len) {
+        int in = src.position(), out = dst.position();
+        Fold fold = null;
+        int i = 0;
+        while (i < len) {
+            step(pos);
+            fold = fold(pos, fold);
+            int end = i + run(pos, len - i);
+            int c = scramble(pos, src.get(in + i) & BYTE_MASK, fold);
+            dst.put(out + i, (byte) c);
+            for (i += 1; i < end; i++) {
+                step(pos);
+                c = scramble(pos, src.get(in + i) & BYTE_MASK, fold);
+                dst.put(out + i, (byte) c);
+            }
+        }
+        src.position(in + len);
+        dst.position(out + len);
+    }
+
+    /** The alphabet of all my tables. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Number of rotor slots, including the reflector. */
+    private final int _numRotors;
+    /** Forward wiring of each slot, 2 * _size entries per slot: entry
+     *  I of slot K is _size plus the forward image of I mod _size, so
+     *  that subtracting a setting never goes negative. */
+    private final int[] _forward;
+    /** Inverse wiring of each slot, laid out as _forward. */
+    private final int[] _backward;
+    /** _notch[K * _size + P] is true iff slot K is at a notch in
+     *  position P. */
+    private final boolean[] _notch;
+    /** _rotates[K] is true iff slot K has a ratchet. */
+    private final boolean[] _rotates;
+    /** Plugboard permutation. */
+    private final int[] _plugboard;
+    /** _wrap[I] is I mod _size, for 0 <= I < 2 * _size. */
+    private final int[] _wrap;
+    /** _toNotch[K * _size + P] is the number of positions slot K must
+     *  turn from position P to reach a notch, or NEVER. */
+    private final long[] _toNotch;
+    /** True iff every combination of positions packs into a long. */
+    private final boolean _packable;
+    /** Number of leading slots whose rotors never move. */
+    private final int _static;
+    /** Number of leading slots composed into each Fold, or 0. */
+    private final int _folded;
+    /** Permutations of the rotors in each slot. */
+    private final Permutation[] _perms;
+    /** The fold of the static slots at the most recent setting of them,
+     *  or null. */
+    private volatile Fold _staticFold;
+
+    /** The composed permutation of a kernel's leading slots at one
+     *  setting of them: the result of passing a signal into the
+     *  outermost of them, through the reflector and back out.  Folds
+     *  are immutable, and apply only to the kernel that made them. */
+    static final class Fold {
+        /** The fold PERM of the slots at the positions packed into
+         *  KEY. */
+        Fold(long key, Permutation perm) {
+            _key = key;
+            _perm = perm;
+            _table = perm.table();
+        }
+
+        /** Return the image of index C. */
+        int apply(int c) {
+            return _table[c];
+        }
+
+        /** Packed positions of the slots. */
+        private final long _key;
+        /** Their composed permutation. */
+        private final Permutation _perm;
+        /** _perm as a table. */
+        private final int[] _table;
+    }
+
+    /** Mask taking a byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Distance to an event that never happens. */
+    private static final long NEVER = Long.MAX_VALUE;
+}
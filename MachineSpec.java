@@ -0,0 +1,123 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** The immutable part of a configured Enigma machine: its alphabet, the
+ *  rotors in its slots (reflector first) and its plugboard, together
+ *  with their compiled wiring tables.  A spec holds no rotor positions,
+ *  so one spec may be shared by any number of threads, each converting
+ *  with its own MachineState.
+ *  @author NikkiTrueblood
+ */
+final class MachineSpec {
+
+    /** A spec for a machine over ALPHABET whose slots hold ROTORS
+     *  (ROTORS[0] being the reflector) and whose plugboard is
+     *  PLUGBOARD. */
+    MachineSpec(Alphabet alphabet, Rotor[] rotors, Permutation plugboard) {
+        _alphabet = alphabet;
+        _rotors = rotors.clone();
+        _plugboard = plugboard;
+        _kernel = new MachineKernel(alphabet, _rotors, plugboard);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of slots, including the reflector. */
+    int numRotors() {
+        return _rotors.length;
+    }
+
+    /** Return the rotor in slot K.  Its own setting is not used. */
+    Rotor rotor(int k) {
+        return _rotors[k];
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /** Return my compiled tables. */
+    MachineKernel kernel() {
+        return _kernel;
+    }
+
+    /** Return a new state with every rotor at position 0. */
+    MachineState newState() {
+        return new MachineState(numRotors());
+    }
+
+    /** Return a new state with rotors set according to SETTING, which
+     *  must be numRotors()-1 characters of my alphabet, the first for
+     *  the leftmost rotor after the reflector. */
+    MachineState newState(String setting) {
+        if (setting.length() != numRotors() - 1) {
+            throw new EnigmaException("Incorrect setting length.");
+        }
+        MachineState state = newState();
+        for (int i = 0; i < setting.length(); i++) {
+            if (!_alphabet.contains(setting.charAt(i))) {
+                throw new EnigmaException("Setting not in alphabet.");
+            }
+            state.set(i + 1, _alphabet.toInt(setting.charAt(i)));
+        }
+        return state;
+    }
+
+    /** Return the setting of STATE in the form accepted by newState. */
+    String setting(MachineState state) {
+        char[] setting = new char[numRotors() - 1];
+        for (int k = 1; k < numRotors(); k++) {
+            setting[k - 1] = _alphabet.toChar(state.get(k));
+        }
+        return new String(setting);
+    }
+
+    /** Step STATE and return the conversion of index C. */
+    int convert(MachineState state, int c) {
+        return _kernel.convert(state.positions(), c);
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF into DST
+     *  starting at DSTOFF, stepping STATE before each one. */
+    void convert(MachineState state, char[] src, int off, int len,
+                 char[] dst, int dstOff) {
+        _kernel.convert(state.positions(), src, off, len, dst, dstOff);
+    }
+
+    /** Convert the LEN indices of SRC starting at OFF into DST starting
+     *  at DSTOFF, stepping STATE before each one. */
+    void convert(MachineState state, int[] src, int off, int len,
+                 int[] dst, int dstOff) {
+        _kernel.convert(state.positions(), src, off, len, dst, dstOff);
+    }
+
+    /** Convert the LEN bytes of SRC starting at OFF into DST starting at
+     *  DSTOFF, stepping STATE before each one (see MachineKernel). */
+    void convert(MachineState state, byte[] src, int off, int len,
+                 byte[] dst, int dstOff) {
+        _kernel.convert(state.positions(), src, off, len, dst, dstOff);
+    }
+
+    /** Convert LEN bytes from SRC into DST, advancing both, stepping
+     *  STATE before each one (see MachineKernel). */
+    void convert(MachineState state, ByteBuffer src, ByteBuffer dst,
+                 int len) {
+        _kernel.convert(state.positions(), src, dst, len);
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** The rotors in my slots, reflector first. */
+    private final Rotor[] _rotors;
+    /** My plugboard. */
+    private final Permutation _plugboard;
+    /** Compiled form of _rotors and _plugboard. */
+    private final MachineKernel _kernel;
+}
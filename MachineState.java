@@ -0,0 +1,48 @@
+package enigma;
+
+/** The mutable part of an Enigma machine in use: the position of the
+ *  rotor in each slot (slot 0 being the reflector).  Everything else
+ *  about a configured machine is in its MachineSpec, which any number
+ *  of states may share.
+ *  @author NikkiTrueblood
+ */
+final class MachineState {
+
+    /** A state for a machine with NUMROTORS slots, all at position 0. */
+    MachineState(int numRotors) {
+        _positions = new int[numRotors];
+    }
+
+    /** A state whose slot positions are a copy of POSITIONS. */
+    MachineState(int[] positions) {
+        _positions = positions.clone();
+    }
+
+    /** Return the number of slots. */
+    int size() {
+        return _positions.length;
+    }
+
+    /** Return the position of the rotor in slot K. */
+    int get(int k) {
+        return _positions[k];
+    }
+
+    /** Set the position of the rotor in slot K to POSN. */
+    void set(int k, int posn) {
+        _positions[k] = posn;
+    }
+
+    /** Return my positions array itself, for use by a MachineKernel. */
+    int[] positions() {
+        return _positions;
+    }
+
+    /** Return a new state with my positions. */
+    MachineState copy() {
+        return new MachineState(_positions);
+    }
+
+    /** Position of the rotor in each slot. */
+    private final int[] _positions;
+}
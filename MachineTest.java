@@ -1,5 +1,7 @@
 package enigma;
 
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import org.junit.Test;
 import org.junit.Rule;
@@ -76,4 +78,241 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+
+    @Test
+    public void testConvertBulk() {
+        String plug = "(HQ) (EX) (IP) (TR) (BY)";
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation(plug, AZ));
+        char[] src = "XXFROMHISSHOULDERHIAWATHA".toCharArray();
+        char[] dst = new char[24];
+        mach.convert(src, 2, 23, dst, 1);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(dst, 1, 23));
+
+        mach = mach1();
+        mach.setPlugboard(new Permutation(plug, AZ));
+        CharBuffer in = CharBuffer.wrap("FROMHISSHOULDERHIAWATHA");
+        CharBuffer out = CharBuffer.allocate(10);
+        assertEquals(10, mach.convert(in, out));
+        assertEquals(13, in.remaining());
+        out.flip();
+        assertEquals("QVPQSOKOIL", out.toString());
+
+        mach = mach1();
+        mach.setPlugboard(new Permutation(plug, AZ));
+        int[] codes = new int[] { 5, 17, 14, 12 };
+        mach.convert(codes, 0, codes.length, codes, 0);
+        assertArrayEquals(new int[] { 16, 21, 15, 16 }, codes);
+    }
+
+    @Test
+    public void testFoldedSlots() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        Rotor refl = new Reflector("B", new Permutation(nav.get("B"), AZ));
+        Rotor beta = new FixedRotor("Beta",
+                new Permutation(nav.get("Beta"), AZ));
+        Rotor left = new MovingRotor("III",
+                new Permutation(nav.get("III"), AZ), "V");
+        MachineKernel kernel = mach1().spec().kernel();
+        assertEquals(2, kernel.staticSlots());
+        assertEquals(3, kernel.foldedSlots());
+        int[] pos = new int[5];
+        MachineKernel.Fold fold = null;
+        for (int p = 0; p < AZ.size(); p += 5) {
+            for (int q = 0; q < AZ.size(); q += 1) {
+                pos[1] = p;
+                pos[2] = q;
+                beta.set(p);
+                left.set(q);
+                MachineKernel.Fold last = fold;
+                fold = kernel.fold(pos, fold);
+                assertNotSame(last, fold);
+                assertSame(fold, kernel.fold(pos, fold));
+                for (int c = 0; c < AZ.size(); c += 1) {
+                    int e = left.convertBackward(beta.convertBackward(
+                        refl.convertForward(beta.convertForward(
+                            left.convertForward(c)))));
+                    assertEquals(e, fold.apply(c));
+                    assertEquals(kernel.scramble(pos, c),
+                                 kernel.scramble(pos, c, fold));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRegistry() {
+        ArrayList<Rotor> catalog = new ArrayList<>(ROTORS.values());
+        for (int k = 0; k < 20000; k += 1) {
+            catalog.add(new FixedRotor("F" + k,
+                    new Permutation(TestUtils.NAVALA.get("Beta"), AZ)));
+        }
+        Machine mach = new Machine(AZ, 5, 3, catalog);
+        RotorRegistry registry = mach.registry();
+        assertEquals(20005, registry.size());
+        assertEquals(1, registry.reflectors().size());
+        assertEquals(3, registry.moving().size());
+        assertEquals(20001, registry.fixed().size());
+        assertTrue(mach.inAllRotors("F19999"));
+        assertFalse(mach.inAllRotors("F20000"));
+        mach.insertRotors(new String[] { "B", "F123", "III", "IV", "I" });
+        assertEquals("F123", mach.getRotor(1).name());
+        assertSame(registry, mach.copy().registry());
+    }
+
+    @Test
+    public void testLazyRegistry() {
+        String[] names = { "B", "Beta", "III", "IV", "I", "Gamma" };
+        int[] kinds = { RotorRegistry.REFLECTOR, RotorRegistry.FIXED,
+                        RotorRegistry.MOVING, RotorRegistry.MOVING,
+                        RotorRegistry.MOVING, RotorRegistry.FIXED };
+        RotorRegistry registry = new RotorRegistry(names, kinds,
+            i -> i == 5 ? null : ROTORS.get(names[i]));
+        assertEquals(0, registry.made());
+        assertEquals(2, registry.fixed().size());
+        Machine mach = new Machine(AZ, 5, 3, registry);
+        mach.insertRotors(ROTORS1);
+        assertEquals(5, registry.made());
+        mach.setRotors(SETTING1);
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                mach.convert("FROMHISSHOULDERHIAWATHA"));
+        assertTrue(mach.inAllRotors("Gamma"));
+        assertEquals(5, registry.made());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnknownRotor() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        mach.insertRotors(new String[] { "B", "Gamma", "III", "IV", "I" });
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateRotorName() {
+        ArrayList<Rotor> catalog = new ArrayList<>(ROTORS.values());
+        catalog.add(ROTORS.get("I"));
+        new RotorRegistry(catalog);
+    }
+
+    @Test
+    public void testDoubleStep() {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+        mach.insertRotors(ROTORS1);
+        mach.setRotors("AUIP");
+        String expected = "AUIQ AUJR AVKS AVKT AVKU";
+        for (String setting : expected.split(" ")) {
+            mach.convert(0);
+            assertEquals(setting, mach.setting());
+        }
+    }
+
+    @Test
+    public void testSeek() {
+        String[][] configs = {
+            { "B", "Beta", "III", "IV", "I" },
+            { "B", "Beta", "I", "III", "IV" },
+        };
+        for (String[] rotors : configs) {
+            for (String start : new String[] { "AXLE", "AUIP", "ZQVJ" }) {
+                Machine mach = new Machine(AZ, 5, 3, ROTORS.values());
+                mach.insertRotors(rotors);
+                mach.setRotors(start);
+                int[] codes = new int[1000003];
+                for (int n = 0; n < 20000; n += 1) {
+                    if (n % 997 == 0 || n < 100) {
+                        assertEquals(mach.setting(), mach.stateAt(n));
+                    }
+                    mach.convert(codes, n, 1, codes, n);
+                }
+                mach.convert(codes, 20000, codes.length - 20000, codes, 0);
+                assertEquals(mach.setting(), mach.stateAt(codes.length));
+                mach.seek(123);
+                assertEquals(mach.stateAt(123), mach.setting());
+            }
+        }
+    }
+
+    @Test
+    public void testConvertParallel() {
+        char[] msg = new char[1000000];
+        java.util.Random random = new java.util.Random(61);
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = AZ.toChar(random.nextInt(26));
+        }
+        String plug = "(HQ) (EX) (IP) (TR) (BY)";
+        char[] expected = new char[msg.length];
+        char[] actual = new char[msg.length];
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation(plug, AZ));
+        mach.convert(msg, 0, msg.length, expected, 0);
+        String finalSetting = mach.setting();
+        mach = mach1();
+        mach.setPlugboard(new Permutation(plug, AZ));
+        mach.convertParallel(msg, 0, msg.length, actual, 0);
+        assertArrayEquals(expected, actual);
+        assertEquals(finalSetting, mach.setting());
+    }
+
+    @Test
+    public void testConvertParallelFallsBack() {
+        char[] msg = new char[1 << 18];
+        java.util.Random random = new java.util.Random(3);
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = AZ.toChar(random.nextInt(26));
+        }
+        int shift = 1000, len = msg.length - shift;
+        char[] expected = msg.clone();
+        mach1().convert(expected, 0, len, expected, shift);
+        char[] actual = msg.clone();
+        mach1().convertParallel(actual, 0, len, actual, shift);
+        assertArrayEquals(expected, actual);
+
+        msg[msg.length - 10] = '5';
+        expected = msg.clone();
+        Machine seq = mach1();
+        try {
+            seq.convert(expected, 0, msg.length, expected, 0);
+            fail("bad character accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        actual = msg.clone();
+        Machine par = mach1();
+        try {
+            par.convertParallel(actual, 0, msg.length, actual, 0);
+            fail("bad character accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertArrayEquals(expected, actual);
+        assertEquals(seq.setting(), par.setting());
+    }
+
+    @Test
+    public void testSharedCatalog() {
+        Machine mach = mach1();
+        Machine other = mach1();
+        String expected = mach1().convert("FROMHISSHOULDERHIAWATHA");
+        assertEquals("AXLE", mach.setting());
+        mach.convert("QQQQQ");
+        assertEquals(expected, other.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testSharedSpec() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        MachineSpec spec = mach.spec();
+        MachineState first = spec.newState("AXLE");
+        MachineState second = spec.newState("AXLE");
+        char[] a = "FROMHISSHOULDERHIAWATHA".toCharArray();
+        char[] b = a.clone();
+        for (int i = 0; i < a.length; i += 1) {
+            spec.convert(first, a, i, 1, a, i);
+            spec.convert(second, b, i, 1, b, i);
+        }
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(a));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(b));
+        assertEquals(spec.setting(first), mach.stateAt(a.length));
+    }
 }
@@ -3,13 +3,23 @@ package enigma;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
-import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ucb.util.CommandArgs;
 
@@ -21,24 +31,88 @@ import static enigma.EnigmaException.*;
 public final class Main {
     /** Process a sequence of encryptions and decryptions, as
      *  specified by ARGS, where 1 <= ARGS.length <= 3.
-     *  ARGS[0] is the name of a configuration file.
+     *  ARGS[0] is the name of a configuration file, or of a machine
+     *  image made from one by --compile.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  With --threads=N, independent message
+     *  sections are converted on N threads, and very long messages
+     *  are also split among the threads of the common fork/join pool
+     *  (see Machine.convertParallel); the output is the same.
+     *  With --compile, ARGS[0] names a configuration file and ARGS[1]
+     *  names a machine image to be written from it.  With --metrics,
+     *  counts of what was done are published through JMX; with
+     *  --stats=SECONDS, they are printed to the standard error every
+     *  SECONDS seconds (if SECONDS is positive) and at the end.  With
+     *  --verbose, the path of every keypress through the machine is
+     *  printed to the standard error; with --trace=N, that of every Nth
+     *  keypress, keeping only the most recent on each thread and
+     *  printing them at the end (see Trace).  With --cache=MB, each
+     *  machine caches its substitutions in up to MB megabytes of tables,
+     *  off the Java heap if --offheap is also given (see
+     *  SubstitutionCache).  With --keystreams=N, the keystreams of up
+     *  to N recently used keys ('*' lines) are cached, so that further
+     *  messages under them are converted by table lookup (see
+     *  KeystreamCache).  With --serve=PORT, ARGS[0] configures a
+     *  machine that converts messages sent to PORT on the loopback
+     *  interface (see Server) until the program is killed. */
     public static void main(String... args) {
         try {
             CommandArgs options =
-                    new CommandArgs("--verbose --=(.*){1,3}", args);
+                    new CommandArgs("--verbose --trace=(\\d+) "
+                                    + "--threads=(\\d+) --compile "
+                                    + "--serve=(\\d+) "
+                                    + "--metrics --stats=(\\d+) "
+                                    + "--cache=(\\d+) --offheap "
+                                    + "--keystreams=(\\d+) "
+                                    + "--=(.*){1,3}", args);
             if (!options.ok()) {
-                throw error("Usage: java enigma.Main [--verbose] "
-                        + "[INPUT [OUTPUT]]");
+                throw error("Usage: java enigma.Main "
+                        + "[--verbose | --trace=N] [--threads=N] "
+                        + "[--metrics] [--stats=SECONDS] "
+                        + "[--cache=MB [--offheap]] [--keystreams=N] "
+                        + "CONFIG [INPUT [OUTPUT]]\n"
+                        + "       java enigma.Main --compile CONFIG IMAGE\n"
+                        + "       java enigma.Main [--metrics] "
+                        + "--serve=PORT CONFIG");
+            }
+            if (options.contains("--compile")) {
+                compile(options.get("--"));
+                return;
             }
 
-            _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            startTrace(options);
+            if (options.contains("--threads")) {
+                setThreads(
+                    Integer.parseInt(options.get("--threads").get(0)));
+            }
+            if (options.contains("--cache")) {
+                _cacheBytes = MEGABYTE
+                    * Long.parseLong(options.get("--cache").get(0));
+                _cacheOffHeap = options.contains("--offheap");
+            }
+            if (options.contains("--keystreams")) {
+                int keys =
+                    Integer.parseInt(options.get("--keystreams").get(0));
+                _keystreams = new KeystreamCache(keys, KEYSTREAM_POSITIONS);
+            }
+            startMetrics(options);
+            if (options.contains("--serve")) {
+                serve(options.get("--"),
+                      Integer.parseInt(options.get("--serve").get(0)));
+                return;
+            }
+            try {
+                new Main(options.get("--")).process();
+            } finally {
+                Trace.dump();
+                if (options.contains("--stats")) {
+                    System.err.print(Metrics.get().report());
+                }
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -46,20 +120,83 @@ public final class Main {
         System.exit(1);
     }
 
+    /** Convert the sections of the input on N threads (see
+     *  processParallel), or sequentially if N is at most 1. */
+    static void setThreads(int n) {
+        _threads = n;
+    }
+
+    /** Start tracing keypresses to the standard error if OPTIONS ask
+     *  for it. */
+    private static void startTrace(CommandArgs options) {
+        if (options.contains("--verbose")) {
+            Trace.startFull(System.err);
+        } else if (options.contains("--trace")) {
+            int interval = Integer.parseInt(options.get("--trace").get(0));
+            Trace.startSampled(interval, System.err);
+        }
+    }
+
+    /** Start recording metrics if OPTIONS ask for them. */
+    private static void startMetrics(CommandArgs options) {
+        if (options.contains("--metrics")) {
+            Metrics.enable();
+            Metrics.get().register();
+        }
+        if (options.contains("--stats")) {
+            Metrics.enable();
+            long period = Long.parseLong(options.get("--stats").get(0));
+            if (period > 0) {
+                Metrics.get().dumpEvery(System.err, period);
+            }
+        }
+    }
+
+    /** Serve conversions on PORT (see Server) with the machine
+     *  configured by the configuration file or image named ARGS[0],
+     *  until killed. */
+    private static void serve(List<String> args, int port) {
+        if (args.size() != 1) {
+            throw error("--serve needs just a configuration");
+        }
+        Main main = new Main(args);
+        Server server = new Server(main.readConfig(), port);
+        System.err.printf("Serving on port %d%n", server.port());
+        server.serve();
+    }
+
+    /** Write a machine image of the configuration file named ARGS[0] to
+     *  the file named ARGS[1]. */
+    private static void compile(List<String> args) {
+        if (args.size() != 2) {
+            throw error("--compile needs a configuration and an image");
+        }
+        Main main = new Main(args.subList(0, 1));
+        try {
+            MachineImage.write(main.readConfig(), args.get(1));
+        } finally {
+            main._config.close();
+        }
+    }
+
     /** Open the necessary files for non-option arguments ARGS (see comment
      *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        if (MachineImage.isImage(args.get(0))) {
+            _image = args.get(0);
+        } else {
+            _config = getInput(args.get(0));
+        }
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            _input = getMessageInput(args.get(1));
         } else {
-            _input = new Scanner(System.in);
+            _input = new MessageInput(Channels.newChannel(System.in));
         }
         if (args.size() > 2) {
             _output = getOutput(args.get(2));
         } else {
-            _output = System.out;
+            _output = new MessageOutput(Channels.newChannel(System.out));
         }
     }
 
@@ -72,11 +209,22 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a MessageInput streaming from the file named NAME. */
+    private MessageInput getMessageInput(String name) {
         try {
-            return new PrintStream(new File(name));
-        } catch (IOException excp) {
+            return new MessageInput(FileChannel.open(Paths.get(name)));
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a MessageOutput writing to the file named NAME. */
+    private MessageOutput getOutput(String name) {
+        try {
+            return new MessageOutput(FileChannel.open(Paths.get(name),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING));
+        } catch (IOException | InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
@@ -84,65 +232,292 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
+    void process() {
+        try {
+            processMessages();
+        } finally {
+            _output.flush();
+        }
+    }
+
+    /** Close my configuration, input and output, writing out any
+     *  buffered output.  For use when a Main is not the whole program,
+     *  as in the benchmarks; main itself leaves them to the system. */
+    void close() {
+        if (_config != null) {
+            _config.close();
+        }
+        _input.close();
+        _output.close();
+    }
+
+    /** Apply a machine configured from _config to the messages in
+     *  _input, sending the results to _output. */
+    private void processMessages() {
         Machine m = readConfig();
+        m.setCache(_cacheBytes, _cacheOffHeap);
+        if (_threads > 1) {
+            processParallel(m);
+            return;
+        }
         while (_input.hasNext()) {
-            if (_input.hasNextLine()) {
-                String i = _input.nextLine();
-                while (i.length() == 0) {
-                    i = _input.nextLine();
-                    _output.print("\n");
-                }
-                i = i.substring(1).trim() + " ";
-                int space;
-                String[] myRotors = new String[m.numRotors()];
-                String settings = "";
-                for (int x = 0; x <= i.length(); x++) {
-                    space = i.indexOf(" ");
-                    String group = i.substring(0, space);
-                    if (m.inAllRotors(group)) {
-                        for (String check: myRotors) {
-                            if (group.equals(check)) {
-                                throw new EnigmaException("Duplicate "
-                                        + "rotor name.");
-                            }
-                        }
-                        myRotors[x] = group;
-                    } else {
-                        settings = group;
-                        i = i.substring(space).trim();
-                        break;
-                    }
-                    i = i.substring(space + 1);
+            String i = _input.nextLine();
+            while (i.length() == 0) {
+                i = _input.nextLine();
+                _output.endLine();
+            }
+            Settings settings = parseSettings(m, i);
+            configure(m, settings, settings._plugboard);
+            KeystreamCache.Keystream keystream = keystream(m);
+            long position = 0;
+            while (_input.hasNextMessageLine()) {
+                int n = _input.nextMessageLine();
+                char[] msg = _input.message();
+                if (keystream != null) {
+                    keystream.convert(position, msg, 0, n, msg, 0);
+                    position += n;
+                } else {
+                    m.convert(msg, 0, n, msg, 0);
                 }
-                if (myRotors[0] == null) {
-                    throw new EnigmaException("No configuration for message.");
+                _output.write(msg, 0, n);
+                _output.endLine();
+                if (Metrics.enabled()) {
+                    Metrics.get().message();
                 }
-                if (myRotors[myRotors.length - 1] == null) {
-                    throw new EnigmaException("Not enough rotors given.");
+            }
+            m.resetRotors();
+        }
+    }
+
+    /** As for processMessages, but converting the sections of _input
+     *  (each a '*' line and the messages under it) concurrently on
+     *  _threads threads, each with its own copy of machine M.  Sections
+     *  are read and parsed in order on this thread, and written in
+     *  order as they complete, so output and the first error reported
+     *  are exactly those of processMessages. */
+    private void processParallel(Machine m) {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ThreadLocal<Machine> machines = ThreadLocal.withInitial(m::copy);
+        ArrayDeque<Future<Section>> pending = new ArrayDeque<>();
+        try {
+            String plugboard = null;
+            while (_input.hasNext()) {
+                Section section = new Section();
+                try {
+                    String line = _input.nextLine();
+                    while (line.length() == 0) {
+                        line = _input.nextLine();
+                        section._blankLines += 1;
+                    }
+                    section._settings = parseSettings(m, line);
+                    if (section._settings._plugboard != null) {
+                        plugboard = section._settings._plugboard;
+                    }
+                    section._plugboard = plugboard;
+                } catch (EnigmaException excp) {
+                    section._error = excp;
+                    pending.add(CompletableFuture.completedFuture(section));
+                    break;
                 }
-                if (settings.length() != m.numRotors() - 1) {
-                    throw new EnigmaException("Wrong number "
-                            + "of settings given.");
+                while (_input.hasNextMessageLine()) {
+                    int n = _input.nextMessageLine();
+                    section._messages.add(Arrays.copyOf(_input.message(), n));
                 }
-                m.insertRotors(myRotors);
-                if (i.length() > 0) {
-                    String plug = i;
-                    m.setPlugboard(new Permutation(plug, _alphabet));
+                pending.add(pool.submit(
+                        () -> section.convert(machines.get())));
+                while (pending.size() > SECTIONS_PER_THREAD * _threads) {
+                    writeSection(pending.remove());
                 }
-                setUp(m, settings);
+            }
+            while (!pending.isEmpty()) {
+                writeSection(pending.remove());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
+    /** Wait for the section converted by FUTURE and write its output,
+     *  throwing the error that stopped it, if any. */
+    private void writeSection(Future<Section> future) {
+        Section section;
+        try {
+            section = future.get();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
             }
-            while (_input.hasNext("[^\\*]+")) {
-                printMessageLine(m.convert(
-                        _input.nextLine().replaceAll("\\s", "")));
+            throw new IllegalStateException(excp.getCause());
+        }
+        for (int k = 0; k < section._blankLines; k += 1) {
+            _output.endLine();
+        }
+        for (int k = 0; k < section._converted; k += 1) {
+            char[] msg = section._messages.get(k);
+            _output.write(msg, 0, msg.length);
+            _output.endLine();
+            if (Metrics.enabled()) {
+                Metrics.get().message();
             }
-            m.resetRotors();
+        }
+        if (section._error != null) {
+            throw section._error;
         }
     }
+
+    /** One '*' section of the input, as processed by processParallel. */
+    private static class Section {
+        /** Configure MACHINE as my settings direct, and convert my
+         *  messages in place, stopping at the first error.  Returns this
+         *  section. */
+        Section convert(Machine machine) {
+            try {
+                machine.resetRotors();
+                configure(machine, _settings,
+                          _plugboard == null ? "" : _plugboard);
+                KeystreamCache.Keystream keystream = keystream(machine);
+                long position = 0;
+                for (char[] msg : _messages) {
+                    if (keystream != null) {
+                        keystream.convert(position, msg, 0, msg.length,
+                                          msg, 0);
+                        position += msg.length;
+                    } else {
+                        machine.convertParallel(msg, 0, msg.length,
+                                                msg, 0);
+                    }
+                    _converted += 1;
+                }
+            } catch (EnigmaException excp) {
+                _error = excp;
+            }
+            return this;
+        }
+
+        /** Number of empty lines preceding my '*' line. */
+        private int _blankLines;
+        /** Contents of my '*' line. */
+        private Settings _settings;
+        /** Plugboard cycles in effect for me, inherited from an earlier
+         *  section if my '*' line has none, or null for no plugboard. */
+        private String _plugboard;
+        /** My message lines, with whitespace removed. */
+        private ArrayList<char[]> _messages = new ArrayList<>();
+        /** Number of leading _messages successfully converted. */
+        private int _converted;
+        /** The error that stopped me, or null. */
+        private EnigmaException _error;
+    }
+
+    /** Return the keystream of M's current rotors, plugboard and setting
+     *  from the keystream cache, or null if messages are not to be
+     *  converted through keystreams. */
+    private static KeystreamCache.Keystream keystream(Machine m) {
+        if (_keystreams == null || Trace.enabled()) {
+            return null;
+        }
+        return _keystreams.get(m);
+    }
+
+    /** Return the settings given by LINE, a '*' line of the input,
+     *  checking its rotor names against those available to M. */
+    static Settings parseSettings(Machine m, String line) {
+        String i = line.substring(1).trim() + " ";
+        int space;
+        String[] myRotors = new String[m.numRotors()];
+        String settings = "";
+        for (int x = 0; x <= i.length(); x++) {
+            space = i.indexOf(" ");
+            String group = i.substring(0, space);
+            if (m.inAllRotors(group)) {
+                if (x >= myRotors.length) {
+                    throw new EnigmaException("Too many rotors given.");
+                }
+                for (String check: myRotors) {
+                    if (group.equals(check)) {
+                        throw new EnigmaException("Duplicate "
+                                + "rotor name.");
+                    }
+                }
+                myRotors[x] = group;
+            } else {
+                settings = group;
+                i = i.substring(space).trim();
+                break;
+            }
+            i = i.substring(space + 1);
+        }
+        if (myRotors[0] == null) {
+            throw new EnigmaException("No configuration for message.");
+        }
+        if (myRotors[myRotors.length - 1] == null) {
+            throw new EnigmaException("Not enough rotors given.");
+        }
+        if (settings.length() != m.numRotors() - 1) {
+            throw new EnigmaException("Wrong number "
+                    + "of settings given.");
+        }
+        return new Settings(myRotors, settings,
+                            i.length() > 0 ? i : null);
+    }
+
+    /** Insert and set the rotors of M as given by SETTINGS, and set its
+     *  plugboard to the cycles PLUGBOARD, or leave it as it is if
+     *  PLUGBOARD is null.  Both processMessages and processParallel
+     *  configure through here, so that they check the same things in
+     *  the same order and report the same errors. */
+    private static void configure(Machine m, Settings settings,
+                                  String plugboard) {
+        m.insertRotors(settings._rotors);
+        if (plugboard != null) {
+            m.setPlugboard(new Permutation(plugboard, m.alphabet()));
+        }
+        setUp(m, settings._setting);
+    }
+
+    /** The contents of one '*' line of the input. */
+    static class Settings {
+        /** Settings naming rotors ROTORS, with initial setting SETTING
+         *  and plugboard cycles PLUGBOARD (null if none were given). */
+        Settings(String[] rotors, String setting, String plugboard) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of the rotors, reflector first. */
+        String[] rotors() {
+            return _rotors;
+        }
+
+        /** Return the initial rotor setting. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard cycles, or null if none were given. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Names of the rotors, reflector first. */
+        private final String[] _rotors;
+        /** Initial rotor setting. */
+        private final String _setting;
+        /** Plugboard cycles, or null. */
+        private final String _plugboard;
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+     *  file _config, or from machine image _image. */
+    Machine readConfig() {
+        if (_image != null) {
+            Machine m = MachineImage.read(_image);
+            _alphabet = m.alphabet();
+            return m;
+        }
         try {
             int numRotors = 0;
             int numPawls = 0;
@@ -157,88 +532,148 @@ public final class Main {
             if (_config.hasNextInt()) {
                 numPawls = _config.nextInt();
             }
-            Collection<Rotor> allRotors = new ArrayList<Rotor>();
-            while (_config.hasNext()) {
-                allRotors.add(readRotor());
+            String rotors = "";
+            _config.useDelimiter("\\z");
+            if (_config.hasNext()) {
+                rotors = _config.next();
             }
-
-
-            return new Machine(_alphabet, numRotors, numPawls, allRotors);
+            return new Machine(_alphabet, numRotors, numPawls,
+                               indexRotors(rotors));
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            String name = _config.next();
-            String type = _config.next();
-            String cycle = "";
-            while (_config.hasNext("\\(.+\\)")) {
-                cycle += _config.next("\\(.+\\)");
+    /** Return a registry of the rotors described in ROTORS, the rotor
+     *  descriptions of a configuration file.  Each description is only
+     *  split into its name, type and the extent of its cycles here; the
+     *  rotor is made, and its cycles parsed, the first time it is
+     *  looked up. */
+    private RotorRegistry indexRotors(String rotors) {
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<String> types = new ArrayList<>();
+        ArrayList<int[]> extents = new ArrayList<>();
+        int[] token = new int[2];
+        int at = nextToken(rotors, 0, token);
+        while (token[0] < token[1]) {
+            names.add(rotors.substring(token[0], token[1]));
+            at = nextToken(rotors, at, token);
+            if (token[0] == token[1]) {
+                throw error("bad rotor description");
             }
-            if (_config.hasNext("\\(.+")) {
+            types.add(rotors.substring(token[0], token[1]));
+            int start = at, end = at;
+            at = nextToken(rotors, at, token);
+            while (rotors.substring(token[0], token[1])
+                   .matches("\\(.+\\)")) {
+                if (start == end) {
+                    start = token[0];
+                }
+                end = token[1];
+                at = nextToken(rotors, at, token);
+            }
+            if (rotors.substring(token[0], token[1]).matches("\\(.+")) {
                 throw new EnigmaException("No closing "
                         + "parentheses on permutation.");
             }
-            Permutation p = new Permutation(cycle, _alphabet);
-            if (type.charAt(0) == 'R') {
-                return new Reflector(name, p);
-            } else if (type.charAt(0) == 'N') {
-                return new FixedRotor(name, p);
-            } else {
-                return new MovingRotor(name, p, type.substring(1));
-            }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+            extents.add(new int[] { start, end });
+        }
+        int[] kinds = new int[names.size()];
+        for (int i = 0; i < kinds.length; i += 1) {
+            char type = types.get(i).charAt(0);
+            kinds[i] = type == 'R' ? RotorRegistry.REFLECTOR
+                : type == 'N' ? RotorRegistry.FIXED : RotorRegistry.MOVING;
         }
+        Alphabet alphabet = _alphabet;
+        return new RotorRegistry(names.toArray(new String[0]), kinds, i -> {
+            int[] extent = extents.get(i);
+            String cycles =
+                rotors.substring(extent[0], extent[1]).replaceAll("\\s+", "");
+            return makeRotor(names.get(i), types.get(i),
+                             new Permutation(cycles, alphabet));
+        });
     }
 
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        for (int i = 0; i < settings.length(); i++) {
-            if (!(_alphabet.contains(settings.charAt(i)))
-                    || settings.length() != M.numRotors() - 1) {
-                throw new EnigmaException("Setting not in alphabet "
-                        + "or incorrect number of settings given.");
-            } else {
-                M.setRotors(settings);
-            }
+    /** Set TOKEN[0] and TOKEN[1] to the start and end of the first
+     *  whitespace-delimited token of TEXT at or after index AT, or both
+     *  to the length of TEXT if there is none.  Return TOKEN[1]. */
+    private static int nextToken(String text, int at, int[] token) {
+        int n = text.length();
+        while (at < n && Character.isWhitespace(text.charAt(at))) {
+            at += 1;
         }
-
+        token[0] = at;
+        while (at < n && !Character.isWhitespace(text.charAt(at))) {
+            at += 1;
+        }
+        token[1] = at;
+        return at;
     }
 
-    /** Return true iff verbose option specified. */
-    static boolean verbose() {
-        return _verbose;
+    /** Return a rotor named NAME of configuration file type TYPE, with
+     *  permutation PERM. */
+    private static Rotor makeRotor(String name, String type,
+                                   Permutation perm) {
+        if (type.charAt(0) == 'R') {
+            return new Reflector(name, perm);
+        } else if (type.charAt(0) == 'N') {
+            return new FixedRotor(name, perm);
+        } else {
+            return new MovingRotor(name, perm, type.substring(1));
+        }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String message = msg;
-        while (message.length() > 4) {
-            _output.print(message.substring(0, 5) + " ");
-            message = message.substring(5);
+    /** Set M according to the specification given on SETTINGS,
+     *  which must have the format specified in the assignment.  Only
+     *  the first character is checked here; M.setRotors checks the
+     *  rest, with its own message. */
+    private static void setUp(Machine M, String settings) {
+        if (settings.length() > 0) {
+            if (!(M.alphabet().contains(settings.charAt(0)))
+                    || settings.length() != M.numRotors() - 1) {
+                throw new EnigmaException("Setting not in alphabet "
+                        + "or incorrect number of settings given.");
+            }
+            M.setRotors(settings);
         }
-        _output.print(message);
-        _output.print("\n");
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private MessageInput _input;
 
-    /** Source of machine configuration. */
+    /** Source of machine configuration, or null if it is an image. */
     private Scanner _config;
 
-    /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    /** Name of the machine image to configure from, or null. */
+    private String _image;
+
+    /** Destination for encoded/decoded messages. */
+    private MessageOutput _output;
+
+    /** Number of threads converting sections, as given by --threads. */
+    private static int _threads = 1;
+
+    /** Bytes of substitution cache for each machine, as given by
+     *  --cache, or 0 for none. */
+    private static long _cacheBytes;
+
+    /** True iff --offheap was given. */
+    private static boolean _cacheOffHeap;
+
+    /** Cache of keystreams for repeated keys, as sized by --keystreams,
+     *  or null. */
+    private static KeystreamCache _keystreams;
+
+    /** Largest number of keypresses of each keystream to cache. */
+    private static final int KEYSTREAM_POSITIONS = 1 << 16;
+
+    /** Bytes in a megabyte. */
+    private static final long MEGABYTE = 1 << 20;
 
-    /** True if --verbose specified. */
-    private static boolean _verbose;
+    /** Number of sections per thread that may be read ahead of the
+     *  output in processParallel. */
+    private static final int SECTIONS_PER_THREAD = 4;
 }
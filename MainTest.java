@@ -0,0 +1,107 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author NikkiTrueblood
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** A configuration with the naval rotors B, C, Beta, Gamma and
+     *  I to V. */
+    private static final String CONFIG =
+        TestUtils.UPPER_STRING + "\n 5 3\n"
+        + rotor("I", "MQ") + rotor("II", "ME") + rotor("III", "MV")
+        + rotor("IV", "MJ") + rotor("V", "MZ") + rotor("Beta", "N")
+        + rotor("Gamma", "N") + rotor("B", "R") + rotor("C", "R");
+
+    /** Sections of input, with blank lines, an inherited plugboard and
+     *  sections enough to keep several threads busy. */
+    private static final String INPUT =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n"
+        + "\n\n* C Gamma V II I QQQQ (AB)\n"
+        + "HELLO WORLD\n"
+        + "* B Beta I III IV ZZZZ\n"
+        + "NO PLUGBOARD GIVEN\n\n";
+
+    /** Return a configuration line for naval rotor NAME of TYPE. */
+    private static String rotor(String name, String type) {
+        return " " + name + " " + type + " "
+            + TestUtils.NAVALA.get(name) + "\n";
+    }
+
+    /** Return the output of converting INPUT with CONFIG on THREADS
+     *  threads, followed by a line with the message of the error that
+     *  stopped it, if any. */
+    private static String run(String input, int threads) throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = dir.resolve("test.conf");
+        Path in = dir.resolve("test.in");
+        Path out = dir.resolve("test.out");
+        Files.write(config, CONFIG.getBytes(StandardCharsets.US_ASCII));
+        Files.write(in, input.getBytes(StandardCharsets.US_ASCII));
+        String error = "";
+        Main.setThreads(threads);
+        Main main = new Main(Arrays.asList(config.toString(), in.toString(),
+                                           out.toString()));
+        try {
+            main.process();
+        } catch (EnigmaException excp) {
+            error = "Error: " + excp.getMessage() + "\n";
+        } finally {
+            main.close();
+            Main.setThreads(1);
+        }
+        String result = new String(Files.readAllBytes(out),
+                                   StandardCharsets.US_ASCII) + error;
+        Files.delete(config);
+        Files.delete(in);
+        Files.delete(out);
+        Files.delete(dir);
+        return result;
+    }
+
+    @Test
+    public void testSequential() throws IOException {
+        String out = run(INPUT, 1);
+        assertTrue(out.startsWith("QVPQS OKOIL PUBKJ ZPISF XDW\n"));
+    }
+
+    @Test
+    public void testParallelMatchesSequential() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 20; k += 1) {
+            input.append(INPUT);
+        }
+        String expected = run(input.toString(), 1);
+        assertEquals(expected, run(input.toString(), 4));
+        assertFalse(expected.contains("Error"));
+
+        for (String bad : new String[] {
+                "* B Beta III IV I AXL5\nAAAA\n",
+                "* B Beta III IV I 5XLE\nAAAA\n",
+                "* B Beta III IV Q AXLE\nAAAA\n",
+                "* B Beta III IV I AXLE (AB) (AC)\nAAAA\n" }) {
+            String text = input + bad + INPUT;
+            expected = run(text, 1);
+            assertTrue(expected.contains("Error: "));
+            assertEquals(expected, run(text, 4));
+        }
+        assertTrue(run(input + "* B Beta III IV I AXL5\n", 1)
+                   .endsWith("Error: Setting not in alphabet.\n"));
+    }
+}
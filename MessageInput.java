@@ -0,0 +1,233 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.Charset;
+
+import static enigma.EnigmaException.*;
+
+/** A streaming reader for message input.  Bytes are read from a channel
+ *  through one reusable buffer and decoded incrementally, so memory use
+ *  is bounded by the longest line rather than the size of the input.
+ *  Its tests for what comes next mirror the Scanner calls that Main
+ *  used to make, without compiling or running any regular expressions.
+ *  @author NikkiTrueblood
+ */
+class MessageInput {
+
+    /** A reader for the contents of CHANNEL, decoded with the platform's
+     *  default charset. */
+    MessageInput(ReadableByteChannel channel) {
+        _channel = channel;
+        _decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        _chars = new char[BUFFER_SIZE];
+        _message = new char[LINE_SIZE];
+    }
+
+    /** Return true iff any non-whitespace character remains. */
+    boolean hasNext() {
+        return tokenStart() >= 0;
+    }
+
+    /** Return true iff a token remains and it does not contain '*',
+     *  i.e. the remaining input continues the current message rather
+     *  than starting a new configuration. */
+    boolean hasNextMessageLine() {
+        int p = tokenStart();
+        if (p < 0) {
+            return false;
+        }
+        while (true) {
+            for (; p < _limit; p += 1) {
+                char c = _chars[p];
+                if (Character.isWhitespace(c)) {
+                    return true;
+                } else if (c == '*') {
+                    return false;
+                }
+            }
+            int consumed = _pos;
+            if (!fill()) {
+                return true;
+            }
+            p -= consumed - _pos;
+        }
+    }
+
+    /** Return the rest of the current line, excluding its terminator,
+     *  and move to the start of the next line. */
+    String nextLine() {
+        int end = lineEnd();
+        if (end < 0) {
+            throw error("unexpected end of input");
+        }
+        String line = new String(_chars, _pos, end - _pos);
+        skipTerminator(end);
+        return line;
+    }
+
+    /** Read the rest of the current line into my message buffer,
+     *  dropping all whitespace in the same pass, move to the start of
+     *  the next line, and return the number of characters kept.  They
+     *  are available from message() until the next call. */
+    int nextMessageLine() {
+        int end = lineEnd();
+        if (end < 0) {
+            throw error("unexpected end of input");
+        }
+        if (end - _pos > _message.length) {
+            _message = new char[Math.max(end - _pos, 2 * _message.length)];
+        }
+        int n = 0;
+        for (int p = _pos; p < end; p += 1) {
+            char c = _chars[p];
+            if (!Character.isWhitespace(c)) {
+                _message[n] = c;
+                n += 1;
+            }
+        }
+        skipTerminator(end);
+        return n;
+    }
+
+    /** Close my channel. */
+    void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close input: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the buffer filled by the last call to nextMessageLine. */
+    char[] message() {
+        return _message;
+    }
+
+    /** Return the buffer index of the first non-whitespace character at
+     *  or after the current position, reading as much input as needed,
+     *  or -1 if there is none. */
+    private int tokenStart() {
+        int p = _pos;
+        while (true) {
+            for (; p < _limit; p += 1) {
+                if (!Character.isWhitespace(_chars[p])) {
+                    return p;
+                }
+            }
+            int consumed = _pos;
+            if (!fill()) {
+                return -1;
+            }
+            p -= consumed - _pos;
+        }
+    }
+
+    /** Return the buffer index of the terminator of the current line
+     *  (or of the end of input if it has none), reading as much input as
+     *  needed, or -1 if no input remains at all. */
+    private int lineEnd() {
+        int p = _pos;
+        while (true) {
+            for (; p < _limit; p += 1) {
+                char c = _chars[p];
+                if (c == '\n' || c == '\r' || c == '\u2028'
+                    || c == '\u2029' || c == '\u0085') {
+                    if (c == '\r' && p + 1 == _limit && !_eof) {
+                        break;
+                    }
+                    return p;
+                }
+            }
+            int consumed = _pos;
+            if (!fill()) {
+                return _pos < _limit ? _limit : -1;
+            }
+            p -= consumed - _pos;
+        }
+    }
+
+    /** Move past the line terminator at index END, if any. */
+    private void skipTerminator(int end) {
+        _pos = end;
+        if (_pos < _limit) {
+            if (_chars[_pos] == '\r' && _pos + 1 < _limit
+                && _chars[_pos + 1] == '\n') {
+                _pos += 1;
+            }
+            _pos += 1;
+        }
+    }
+
+    /** Decode more input into _chars, first discarding characters before
+     *  _pos (so buffer indices shift down by the old _pos).  Return false
+     *  if no more characters are available. */
+    private boolean fill() {
+        if (_eof) {
+            return false;
+        }
+        System.arraycopy(_chars, _pos, _chars, 0, _limit - _pos);
+        _limit -= _pos;
+        _pos = 0;
+        if (_limit == _chars.length) {
+            char[] bigger = new char[2 * _chars.length];
+            System.arraycopy(_chars, 0, bigger, 0, _limit);
+            _chars = bigger;
+        }
+        CharBuffer out = CharBuffer.wrap(_chars, _limit,
+                                         _chars.length - _limit);
+        try {
+            while (out.position() == _limit) {
+                long start = Metrics.enabled() ? System.nanoTime() : 0;
+                int n = _channel.read(_bytes);
+                if (start != 0) {
+                    Metrics.get().read(Math.max(n, 0),
+                                       System.nanoTime() - start);
+                }
+                _bytes.flip();
+                if (n < 0) {
+                    _decoder.decode(_bytes, out, true);
+                    _decoder.flush(out);
+                    _eof = true;
+                    break;
+                }
+                _decoder.decode(_bytes, out, false);
+                _bytes.compact();
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        boolean more = out.position() > _limit;
+        _limit = out.position();
+        return more;
+    }
+
+    /** Size of the byte buffer and initial size of the char buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Initial size of the message buffer. */
+    private static final int LINE_SIZE = 1 << 12;
+
+    /** Source of input bytes. */
+    private final ReadableByteChannel _channel;
+    /** Converts input bytes to characters. */
+    private final CharsetDecoder _decoder;
+    /** Bytes read from _channel but not yet decoded. */
+    private final ByteBuffer _bytes;
+    /** Decoded characters; those in [_pos, _limit) are unread. */
+    private char[] _chars;
+    /** Index of the first unread character in _chars. */
+    private int _pos;
+    /** Index just past the last decoded character in _chars. */
+    private int _limit;
+    /** True once _channel is exhausted and the decoder flushed. */
+    private boolean _eof;
+    /** Whitespace-free contents of the last message line. */
+    private char[] _message;
+}
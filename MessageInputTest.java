@@ -0,0 +1,75 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the MessageInput class.
+ *  @author NikkiTrueblood
+ */
+public class MessageInputTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a MessageInput reading TEXT. */
+    private static MessageInput input(String text) {
+        return new MessageInput(Channels.newChannel(
+                new ByteArrayInputStream(text.getBytes())));
+    }
+
+    /** Return the next message line of IN as a String. */
+    private static String message(MessageInput in) {
+        int n = in.nextMessageLine();
+        return new String(in.message(), 0, n);
+    }
+
+    @Test
+    public void testSections() {
+        MessageInput in = input("* B I AA\r\nHEL LO\r\n\r\n"
+                                + " WOR\tLD \n* C I BB\nX\n\n");
+        assertTrue(in.hasNext());
+        assertFalse(in.hasNextMessageLine());
+        assertEquals("* B I AA", in.nextLine());
+        assertTrue(in.hasNextMessageLine());
+        assertEquals("HELLO", message(in));
+        assertTrue(in.hasNextMessageLine());
+        assertEquals("", message(in));
+        assertTrue(in.hasNextMessageLine());
+        assertEquals("WORLD", message(in));
+        assertFalse(in.hasNextMessageLine());
+        assertEquals("* C I BB", in.nextLine());
+        assertEquals("X", message(in));
+        assertFalse(in.hasNextMessageLine());
+        assertFalse(in.hasNext());
+    }
+
+    @Test
+    public void testStarInsideToken() {
+        MessageInput in = input("\n  AB*CD EF\n");
+        assertTrue(in.hasNext());
+        assertFalse(in.hasNextMessageLine());
+        assertEquals("", in.nextLine());
+        assertEquals("  AB*CD EF", in.nextLine());
+        assertFalse(in.hasNext());
+    }
+
+    @Test
+    public void testLongLine() {
+        StringBuilder text = new StringBuilder("* B I AA\n");
+        for (int i = 0; i < 200000; i += 1) {
+            text.append(i % 7 == 0 ? ' ' : (char) ('A' + i % 26));
+        }
+        String expected = text.substring(9).replace(" ", "");
+        MessageInput in = input(text.toString());
+        in.nextLine();
+        assertTrue(in.hasNextMessageLine());
+        assertEquals(expected, message(in));
+        assertFalse(in.hasNext());
+    }
+}
@@ -0,0 +1,158 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import static enigma.EnigmaException.*;
+
+/** The output stage for converted messages.  Characters are written
+ *  into one large reusable buffer in groups (five letters by default,
+ *  each group followed by a blank) and the buffer is encoded and
+ *  written to a channel only when full or flushed.
+ *  @author NikkiTrueblood
+ */
+class MessageOutput {
+
+    /** An output stage writing to CHANNEL, with groups of five and no
+     *  limit on line width. */
+    MessageOutput(WritableByteChannel channel) {
+        this(channel, DEFAULT_GROUP, 0);
+    }
+
+    /** An output stage writing to CHANNEL in groups of GROUPSIZE
+     *  characters.  If LINEWIDTH is positive, a group that would take
+     *  a line past LINEWIDTH characters starts a new line instead. */
+    MessageOutput(WritableByteChannel channel, int groupSize,
+                  int lineWidth) {
+        if (groupSize <= 0 || lineWidth < 0) {
+            throw error("bad output format: groups of %d, width %d",
+                        groupSize, lineWidth);
+        }
+        _channel = channel;
+        _groupSize = groupSize;
+        _lineWidth = lineWidth;
+        _encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _chars = CharBuffer.allocate(BUFFER_SIZE);
+        _bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /** Append the LEN characters of MSG starting at OFF to the current
+     *  message line. */
+    void write(char[] msg, int off, int len) {
+        int end = off + len;
+        while (off < end) {
+            if (_chars.remaining() < 2) {
+                drain();
+            }
+            int k = Math.min(Math.min(_groupSize - _inGroup, end - off),
+                             _chars.remaining() - 1);
+            _chars.put(msg, off, k);
+            off += k;
+            _inGroup += k;
+            _column += k;
+            _wrapped = false;
+            if (_inGroup == _groupSize) {
+                _inGroup = 0;
+                if (_lineWidth > 0
+                    && _column + 1 + _groupSize > _lineWidth) {
+                    _chars.put('\n');
+                    _column = 0;
+                    _wrapped = true;
+                } else {
+                    _chars.put(' ');
+                    _column += 1;
+                }
+            }
+        }
+    }
+
+    /** End the current message line. */
+    void endLine() {
+        if (!_chars.hasRemaining()) {
+            drain();
+        }
+        if (!_wrapped) {
+            _chars.put('\n');
+        }
+        _column = 0;
+        _inGroup = 0;
+        _wrapped = false;
+    }
+
+    /** Write out everything buffered so far. */
+    void flush() {
+        drain();
+    }
+
+    /** Write out everything buffered so far and close my channel. */
+    void close() {
+        drain();
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close output: %s", excp.getMessage());
+        }
+    }
+
+    /** Encode and write the characters in _chars. */
+    private void drain() {
+        _chars.flip();
+        try {
+            CoderResult result;
+            do {
+                result = _encoder.encode(_chars, _bytes, false);
+                writeBytes();
+            } while (result.isOverflow());
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _chars.compact();
+    }
+
+    /** Write the bytes in _bytes to _channel. */
+    private void writeBytes() throws IOException {
+        _bytes.flip();
+        long start = Metrics.enabled() ? System.nanoTime() : 0;
+        int n = _bytes.remaining();
+        while (_bytes.hasRemaining()) {
+            _channel.write(_bytes);
+        }
+        if (start != 0) {
+            Metrics.get().written(n, System.nanoTime() - start);
+        }
+        _bytes.clear();
+    }
+
+    /** Default number of characters in a group. */
+    static final int DEFAULT_GROUP = 5;
+    /** Size of the character and byte buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Destination of output bytes. */
+    private final WritableByteChannel _channel;
+    /** Number of characters per group. */
+    private final int _groupSize;
+    /** Maximum line width, or 0 for no limit. */
+    private final int _lineWidth;
+    /** Converts characters to output bytes. */
+    private final CharsetEncoder _encoder;
+    /** Characters not yet encoded. */
+    private final CharBuffer _chars;
+    /** Encoded bytes not yet written. */
+    private final ByteBuffer _bytes;
+    /** Number of characters written to the current group. */
+    private int _inGroup;
+    /** Number of characters written to the current output line. */
+    private int _column;
+    /** True iff the last thing written was a line break made to keep
+     *  within _lineWidth. */
+    private boolean _wrapped;
+}
@@ -0,0 +1,64 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the MessageOutput class.
+ *  @author NikkiTrueblood
+ */
+public class MessageOutputTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return what OUT produces when given LINES, one message line each,
+     *  in groups of GROUP characters and lines of at most WIDTH. */
+    private static String format(int group, int width, String... lines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageOutput out =
+            new MessageOutput(Channels.newChannel(bytes), group, width);
+        for (String line : lines) {
+            char[] chars = line.toCharArray();
+            for (int i = 0; i < chars.length; i += 3) {
+                out.write(chars, i, Math.min(3, chars.length - i));
+            }
+            out.endLine();
+        }
+        out.flush();
+        return bytes.toString();
+    }
+
+    @Test
+    public void testGroupsOfFive() {
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n\nABCDE FGHIJ \nAB\n",
+                     format(5, 0, "QVPQSOKOILPUBKJZPISFXDW", "",
+                            "ABCDEFGHIJ", "AB"));
+    }
+
+    @Test
+    public void testLineWidth() {
+        assertEquals("ABCD EFGH\nIJKL \nABCD EFGH\n\n",
+                     format(4, 10, "ABCDEFGHIJKL", "ABCDEFGH", ""));
+    }
+
+    @Test
+    public void testLongMessage() {
+        StringBuilder msg = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100000; i += 1) {
+            char c = (char) ('A' + i % 26);
+            msg.append(c);
+            expected.append(c);
+            if (i % 5 == 4) {
+                expected.append(' ');
+            }
+        }
+        assertEquals(expected + "\n", format(5, 0, msg.toString()));
+    }
+}
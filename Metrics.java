@@ -0,0 +1,264 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import static enigma.EnigmaException.*;
+
+/** Counters and latency histograms describing what the machines and
+ *  Main have done, kept in one process-wide registry.  Nothing is
+ *  recorded until enable() is called; after that, counts are kept in
+ *  striped LongAdders and latencies in lock-free histograms, so that
+ *  threads recording at once do not contend.  Machines record once per
+ *  bulk conversion rather than once per character, apart from the
+ *  single-character convert(int), which costs one uncontended add.
+ *  The registry can be published as a JMX MBean and dumped
+ *  periodically.
+ *  @author NikkiTrueblood
+ */
+final class Metrics implements MetricsMBean {
+
+    /** The registry. */
+    private Metrics() {
+        _bySize = new LatencyHistogram[SIZE_LABELS.length];
+        for (int i = 0; i < _bySize.length; i += 1) {
+            _bySize[i] = new LatencyHistogram();
+        }
+        _start = System.nanoTime();
+    }
+
+    /** Return the registry. */
+    static Metrics get() {
+        return INSTANCE;
+    }
+
+    /** Return true iff metrics are being recorded. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Start recording metrics. */
+    static void enable() {
+        if (!_enabled) {
+            INSTANCE.reset();
+            _enabled = true;
+        }
+    }
+
+    /** Note the conversion of LEN characters in one call, taking NANOS
+     *  nanoseconds. */
+    void conversion(int len, long nanos) {
+        _characters.add(len);
+        _conversions.increment();
+        int bucket = len < 1 ? 0
+            : (31 - Integer.numberOfLeadingZeros(len)) / SIZE_BITS;
+        _bySize[Math.min(bucket, _bySize.length - 1)].record(nanos);
+    }
+
+    /** Note the conversion of one character on its own. */
+    void character() {
+        _characters.increment();
+    }
+
+    /** Note that Main processed a message line. */
+    void message() {
+        _messages.increment();
+    }
+
+    /** Note that rotors were inserted into a machine. */
+    void rotorInsertion() {
+        _rotorInsertions.increment();
+    }
+
+    /** Note that a machine's rotors were set. */
+    void rotorSetting() {
+        _rotorSettings.increment();
+    }
+
+    /** Note that a machine's plugboard was set. */
+    void plugboardChange() {
+        _plugboardChanges.increment();
+    }
+
+    /** Note that BYTES bytes of input were read in NANOS nanoseconds. */
+    void read(long bytes, long nanos) {
+        _bytesRead.add(bytes);
+        _ioNanos.add(nanos);
+    }
+
+    /** Note that BYTES bytes of output were written in NANOS
+     *  nanoseconds. */
+    void written(long bytes, long nanos) {
+        _bytesWritten.add(bytes);
+        _ioNanos.add(nanos);
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getConversions() {
+        return _conversions.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getRotorInsertions() {
+        return _rotorInsertions.sum();
+    }
+
+    @Override
+    public long getRotorSettings() {
+        return _rotorSettings.sum();
+    }
+
+    @Override
+    public long getPlugboardChanges() {
+        return _plugboardChanges.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return _bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return _bytesWritten.sum();
+    }
+
+    @Override
+    public long getIoNanos() {
+        return _ioNanos.sum();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        double seconds = (System.nanoTime() - _start) / 1e9;
+        return seconds <= 0 ? 0.0 : getCharacters() / seconds;
+    }
+
+    @Override
+    public String[] getLatencies() {
+        String[] result = new String[_bySize.length];
+        for (int i = 0; i < _bySize.length; i += 1) {
+            result[i] = SIZE_LABELS[i] + " chars: " + _bySize[i];
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] {
+                _characters, _conversions, _messages, _rotorInsertions,
+                _rotorSettings, _plugboardChanges, _bytesRead,
+                _bytesWritten, _ioNanos }) {
+            adder.reset();
+        }
+        for (LatencyHistogram histogram : _bySize) {
+            histogram.reset();
+        }
+        _start = System.nanoTime();
+    }
+
+    /** Publish me as a JMX MBean named NAME. */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(this, MetricsMBean.class),
+                    new ObjectName(NAME));
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Print report() to OUT every PERIOD seconds, from a daemon
+     *  thread, and return the thread's executor (which the caller may
+     *  shut down). */
+    ScheduledExecutorService dumpEvery(PrintStream out, long period) {
+        ScheduledExecutorService dumper =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "enigma-metrics");
+                t.setDaemon(true);
+                return t;
+            });
+        dumper.scheduleAtFixedRate(() -> out.print(report()), period,
+                                   period, TimeUnit.SECONDS);
+        return dumper;
+    }
+
+    /** Return a readable summary of all my counts, one per line. */
+    String report() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("characters: %d (%.0f/s)%n",
+                                    getCharacters(),
+                                    getCharactersPerSecond()));
+        result.append(String.format("conversions: %d, messages: %d%n",
+                                    getConversions(), getMessages()));
+        result.append(String.format("rotor insertions: %d, settings: %d,"
+                                    + " plugboard changes: %d%n",
+                                    getRotorInsertions(), getRotorSettings(),
+                                    getPlugboardChanges()));
+        result.append(String.format("bytes read: %d, written: %d,"
+                                    + " I/O time: %d ms%n",
+                                    getBytesRead(), getBytesWritten(),
+                                    getIoNanos() / 1000000));
+        for (String line : getLatencies()) {
+            result.append("latency ").append(line)
+                .append(String.format("%n"));
+        }
+        return result.toString();
+    }
+
+    /** JMX name of the registry. */
+    static final String NAME = "enigma:type=Metrics";
+
+    /** Number of bits of conversion size covered by each latency
+     *  histogram. */
+    private static final int SIZE_BITS = 4;
+    /** Labels of the size ranges of the latency histograms. */
+    private static final String[] SIZE_LABELS = {
+        "<16", "<256", "<4096", "<65536", ">=65536"
+    };
+    /** The registry. */
+    private static final Metrics INSTANCE = new Metrics();
+    /** True iff metrics are being recorded. */
+    private static volatile boolean _enabled;
+
+    /** Characters converted. */
+    private final LongAdder _characters = new LongAdder();
+    /** Bulk conversions. */
+    private final LongAdder _conversions = new LongAdder();
+    /** Message lines processed by Main. */
+    private final LongAdder _messages = new LongAdder();
+    /** Rotor insertions. */
+    private final LongAdder _rotorInsertions = new LongAdder();
+    /** Rotor settings. */
+    private final LongAdder _rotorSettings = new LongAdder();
+    /** Plugboard changes. */
+    private final LongAdder _plugboardChanges = new LongAdder();
+    /** Bytes of input read. */
+    private final LongAdder _bytesRead = new LongAdder();
+    /** Bytes of output written. */
+    private final LongAdder _bytesWritten = new LongAdder();
+    /** Nanoseconds spent on input and output. */
+    private final LongAdder _ioNanos = new LongAdder();
+    /** Conversion latencies by conversion size. */
+    private final LatencyHistogram[] _bySize;
+    /** Time at which counting started, from System.nanoTime. */
+    private volatile long _start;
+}
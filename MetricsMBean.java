@@ -0,0 +1,47 @@
+package enigma;
+
+/** The management interface of Metrics, as seen through JMX.
+ *  @author NikkiTrueblood
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharacters();
+
+    /** Return the number of bulk conversions (whole messages or
+     *  buffers) performed. */
+    long getConversions();
+
+    /** Return the number of message lines processed by Main. */
+    long getMessages();
+
+    /** Return the number of times rotors were inserted. */
+    long getRotorInsertions();
+
+    /** Return the number of times rotors were set. */
+    long getRotorSettings();
+
+    /** Return the number of times a plugboard was set. */
+    long getPlugboardChanges();
+
+    /** Return the number of bytes of message input read. */
+    long getBytesRead();
+
+    /** Return the number of bytes of output written. */
+    long getBytesWritten();
+
+    /** Return the time spent reading input and writing output, in
+     *  nanoseconds. */
+    long getIoNanos();
+
+    /** Return the number of characters converted per second since the
+     *  metrics were enabled or reset. */
+    double getCharactersPerSecond();
+
+    /** Return a summary of conversion latencies, in nanoseconds, for
+     *  each range of conversion sizes. */
+    String[] getLatencies();
+
+    /** Set every count to 0. */
+    void reset();
+}
@@ -0,0 +1,69 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics and LatencyHistogram
+ *  classes.
+ *  @author NikkiTrueblood
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 1000; v += 1) {
+            histogram.record(v);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1000, histogram.max());
+        long p50 = histogram.percentile(0.5);
+        assertTrue(p50 >= 500 && p50 <= 500 * 9 / 8);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        for (long v : new long[] { 0, 7, 8, 17, 1000, Long.MAX_VALUE }) {
+            int b = LatencyHistogram.bucket(v);
+            assertTrue(LatencyHistogram.highest(b) >= v);
+            assertTrue(b == 0 || LatencyHistogram.highest(b - 1) < v);
+        }
+        histogram.reset();
+        assertEquals(0, histogram.count());
+    }
+
+    @Test
+    public void testMachineMetrics() {
+        Machine mach = navalMachine(null, null, "B", "I");
+        Metrics.enable();
+        Metrics metrics = Metrics.get();
+        metrics.reset();
+        mach.insertRotors(new String[] {"B", "I"});
+        mach.setRotors("A");
+        mach.setPlugboard(new Permutation("(AB)", AZ));
+        mach.convert("HELLOWORLD");
+        mach.convert(3);
+        assertEquals(11, metrics.getCharacters());
+        assertEquals(1, metrics.getConversions());
+        assertEquals(1, metrics.getRotorInsertions());
+        assertEquals(1, metrics.getRotorSettings());
+        assertEquals(1, metrics.getPlugboardChanges());
+        assertTrue(metrics.getLatencies()[0].startsWith("<16 chars: n=1 "));
+        assertTrue(metrics.report().contains("characters: 11"));
+
+        mach.convert(CharBuffer.wrap("ABC").asReadOnlyBuffer(),
+                     CharBuffer.allocate(3));
+        assertEquals(14, metrics.getCharacters());
+        assertEquals(2, metrics.getConversions());
+
+        navalMachine(null, null, "B", "I").setSpec(mach.spec());
+        assertEquals(2, metrics.getRotorInsertions());
+        assertEquals(2, metrics.getPlugboardChanges());
+    }
+}
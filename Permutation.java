@@ -2,6 +2,8 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
@@ -9,7 +11,8 @@ import java.util.ArrayList;
  */
 class Permutation {
     /** ArrayList of Strings to represent
-     * all the cycles in the permutation. */
+     * all the cycles in the permutation, or null if they have not yet
+     * been worked out from the tables. */
     private ArrayList<String> _perm = new ArrayList<String>();
     /** Set this Permutation to that specified by CYCLES, a string in the
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
@@ -46,16 +49,146 @@ class Permutation {
                 }
             }
         }
+        compile();
     }
+
+    /** Set this Permutation to the one that maps each index I of
+     *  ALPHABET to FORWARD[I].  FORWARD must hold each index exactly
+     *  once; it is copied. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (forward.length != alphabet.size()) {
+            throw error("permutation table has %d entries, not %d",
+                        forward.length, alphabet.size());
+        }
+        _forward = forward.clone();
+        _inverse = new int[_forward.length];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < _forward.length; i++) {
+            int to = _forward[i];
+            if (to < 0 || to >= _forward.length || _inverse[to] != -1) {
+                throw error("permutation table is not a permutation");
+            }
+            _inverse[to] = i;
+        }
+        _perm = null;
+    }
+
+    /** A permutation of ALPHABET with tables FORWARD and INVERSE, which
+     *  must be inverses of each other; they are not copied. */
+    private Permutation(Alphabet alphabet, int[] forward, int[] inverse) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+        _perm = null;
+    }
+
+    /** Return my cycles, each as a String c0c1...cmc0. */
     ArrayList<String> perm() {
+        if (_perm == null) {
+            _perm = new ArrayList<String>();
+            for (int[] cycle : cycles()) {
+                StringBuilder s = new StringBuilder();
+                for (int i : cycle) {
+                    s.append(_alphabet.toChar(i));
+                }
+                _perm.add(s.append(_alphabet.toChar(cycle[0])).toString());
+            }
+        }
         return _perm;
     }
+
+    /** Return my cycles of length two or more, each as the indices
+     *  i, permute(i), permute(permute(i)), ... starting from its
+     *  smallest index, in order of those indices. */
+    List<int[]> cycles() {
+        List<int[]> cycles = new ArrayList<int[]>();
+        boolean[] seen = new boolean[_forward.length];
+        int[] cycle = new int[_forward.length];
+        for (int i = 0; i < _forward.length; i++) {
+            if (!seen[i] && _forward[i] != i) {
+                int n = 0;
+                for (int j = i; !seen[j]; j = _forward[j]) {
+                    seen[j] = true;
+                    cycle[n] = j;
+                    n += 1;
+                }
+                cycles.add(Arrays.copyOf(cycle, n));
+            }
+        }
+        return cycles;
+    }
+
+    /** Return the permutation that applies OTHER and then me, so that
+     *  it maps P to permute(OTHER.permute(P)).  OTHER must permute the
+     *  same alphabet. */
+    Permutation compose(Permutation other) {
+        if (other.size() != size()) {
+            throw error("cannot compose permutations of %d and %d",
+                        size(), other.size());
+        }
+        int n = size();
+        int[] forward = new int[n], inverse = new int[n];
+        for (int i = 0; i < n; i++) {
+            int to = _forward[other._forward[i]];
+            forward[i] = to;
+            inverse[to] = i;
+        }
+        return new Permutation(_alphabet, forward, inverse);
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        return new Permutation(_alphabet, _inverse, _forward);
+    }
+
+    /** Return me conjugated by a shift of K: the permutation mapping P
+     *  to permute(P + K) - K, modulo the alphabet size.  This is the
+     *  wiring of a rotor with permutation me as seen from its frame
+     *  when it is at position K. */
+    Permutation shifted(int k) {
+        int n = size();
+        int[] forward = new int[n], inverse = new int[n];
+        for (int i = 0; i < n; i++) {
+            int to = wrap(_forward[wrap(i + k)] - k);
+            forward[i] = to;
+            inverse[to] = i;
+        }
+        return new Permutation(_alphabet, forward, inverse);
+    }
+
+    /** Return a copy of my table: entry I is permute(I). */
+    int[] table() {
+        return _forward.clone();
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
         _perm.add(cycle + cycle.charAt(0));
     }
 
+    /** Build the forward and inverse lookup tables from the cycles in
+     *  _perm, so that permuting or inverting an index is a single array
+     *  access.  Indices that appear in no cycle map to themselves. */
+    private void compile() {
+        int n = size();
+        _forward = new int[n];
+        _inverse = new int[n];
+        for (int i = 0; i < n; i++) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        for (String cycle : _perm) {
+            for (int j = 0; j < cycle.length() - 1; j++) {
+                int from = _alphabet.toInt(cycle.charAt(j));
+                int to = _alphabet.toInt(cycle.charAt(j + 1));
+                _forward[from] = to;
+                _inverse[to] = from;
+            }
+        }
+    }
+
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
         int r = p % size();
@@ -73,40 +206,24 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char pp = _alphabet.toChar(wrap(p));
-        return _alphabet.toInt(permute(pp));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char cc = _alphabet.toChar(wrap(c));
-        return _alphabet.toInt(invert(cc));
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        for (int i = 0; i < _perm.size(); i++) {
-            for (int j = 0; j < _perm.get(i).length(); j++) {
-                if (_perm.get(i).charAt(j) == p) {
-                    return _perm.get(i).charAt(j + 1);
-                }
-            }
-        }
-        return p;
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        for (int i = 0; i < _perm.size(); i++) {
-            for (int j = 0; j < _perm.get(i).length(); j++) {
-                if (_perm.get(i).charAt(j) == c && j != 0) {
-                    return _perm.get(i).charAt(j - 1);
-                }
-            }
-        }
-        return c;
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -117,9 +234,38 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == i) {
+                return false;
+            }
+        }
         return true;
     }
 
+    /** Return my cycles of length two or more in cycle notation, in the
+     *  form accepted by Permutation(String, Alphabet), e.g. "(AB) (CDE)". */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int[] cycle : cycles()) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append('(');
+            for (int i : cycle) {
+                result.append(_alphabet.toChar(i));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
+
+    /** _forward[i] is the index that index I maps to. */
+    private int[] _forward;
+
+    /** _inverse[i] is the index that maps to index I. */
+    private int[] _inverse;
 }
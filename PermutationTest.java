@@ -98,4 +98,41 @@ public class PermutationTest {
                 "BTCDEFGHIJKLNOTPQRSZTUVWXY");
     }
 
+    @Test
+    public void testFromTable() {
+        Permutation p = new Permutation(new int[] { 1, 2, 0, 3 },
+                                        new Alphabet("ABCD"));
+        assertEquals('B', p.permute('A'));
+        assertEquals('A', p.invert('B'));
+        assertEquals(3, p.permute(3));
+        assertEquals(1, p.perm().size());
+        assertEquals("ABCA", p.perm().get(0));
+    }
+
+    @Test
+    public void testAlgebra() {
+        Alphabet abcd = new Alphabet("ABCD");
+        Permutation p = new Permutation("(ABC)", abcd);
+        Permutation q = new Permutation("(AD)", abcd);
+        Permutation pq = p.compose(q);
+        for (int i = 0; i < 4; i += 1) {
+            assertEquals(p.permute(q.permute(i)), pq.permute(i));
+            assertEquals(i, pq.inverse().permute(pq.permute(i)));
+        }
+        assertEquals("(ADBC)", pq.toString());
+        assertEquals("(ACB)", p.inverse().toString());
+        assertEquals("(ABC)", p.shifted(4).toString());
+        assertEquals("(ABD)", p.shifted(1).toString());
+        assertEquals(2, new Permutation("(AB) (CD)", abcd).cycles().size());
+        assertArrayEquals(new int[] { 0, 3, 1, 2 }, pq.cycles().get(0));
+    }
+
+    @Test
+    public void testIsDerangement() {
+        Alphabet abcd = new Alphabet("ABCD");
+        assertTrue(new Permutation("(AB) (CD)", abcd).derangement());
+        assertFalse(new Permutation("(ABC)", abcd).derangement());
+        assertFalse(new Permutation("(AB) (C)", abcd).derangement());
+        assertEquals("(AB)", new Permutation("(AB) (C)", abcd).toString());
+    }
 }
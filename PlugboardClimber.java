@@ -0,0 +1,251 @@
+package enigma;
+
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers a plugboard by stochastic hill climbing once the rotors and
+ *  their setting are known.  Each candidate plugboard is scored by the
+ *  quadgram log-probability of the decryption it gives.  The rotors'
+ *  part of the machine does not depend on the plugboard, so its
+ *  involution at every message position is computed once; a candidate
+ *  is then just an int[] plugboard table that each move patches in at
+ *  most four entries (and unpatches if the move does not help), and
+ *  decrypting a letter is three table loads.
+ *  @author NikkiTrueblood
+ */
+final class PlugboardClimber {
+
+    /** A climber for CIPHERTEXT (ignoring whitespace), produced by the
+     *  rotors of SPEC starting at SETTING, scored with QUADGRAMS.  Any
+     *  plugboard of SPEC is ignored. */
+    PlugboardClimber(MachineSpec spec, String setting, String ciphertext,
+                     QuadgramTable quadgrams) {
+        Alphabet alphabet = spec.alphabet();
+        if (quadgrams.alphabet() != alphabet) {
+            throw error("quadgram table is for another alphabet");
+        }
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _logs = quadgrams.logs();
+        _shift = quadgrams.shift();
+        _mask = quadgrams.mask();
+
+        Rotor[] rotors = new Rotor[spec.numRotors()];
+        for (int k = 0; k < rotors.length; k += 1) {
+            rotors[k] = spec.rotor(k);
+        }
+        MachineSpec bare =
+            new MachineSpec(alphabet, rotors, new Permutation("", alphabet));
+        int[] pos = bare.newState(setting).positions();
+        String text = ciphertext.replaceAll("\\s+", "");
+        _cipher = new int[text.length()];
+        _scramblers = new int[text.length() * _size];
+        MachineKernel kernel = bare.kernel();
+        MachineKernel.Fold fold = null;
+        for (int i = 0; i < text.length(); i += 1) {
+            _cipher[i] = alphabet.toInt(text.charAt(i));
+            kernel.step(pos);
+            fold = kernel.fold(pos, fold);
+            for (int c = 0; c < _size; c += 1) {
+                _scramblers[i * _size + c] = kernel.scramble(pos, c, fold);
+            }
+        }
+        _plug = new int[_size];
+        _maxPairs = _size / 2;
+    }
+
+    /** Allow at most MAXPAIRS pairs of letters to be plugged together. */
+    void setMaxPairs(int maxPairs) {
+        _maxPairs = Math.max(0, Math.min(maxPairs, _size / 2));
+    }
+
+    /** Climb from RESTARTS starting plugboards (the first being
+     *  empty, the rest random). */
+    void setRestarts(int restarts) {
+        if (restarts <= 0) {
+            throw error("bad number of restarts: %d", restarts);
+        }
+        _restarts = restarts;
+    }
+
+    /** Use SEED for the random starting plugboards. */
+    void setSeed(long seed) {
+        _seed = seed;
+    }
+
+    /** Return the number of candidate plugboards scored so far. */
+    long evaluations() {
+        return _evaluations;
+    }
+
+    /** Return the best plugboard found, as cycles in the form accepted
+     *  by Permutation.  Its score is available from bestScore(). */
+    String climb() {
+        Random random = new Random(_seed);
+        int[] best = new int[_size];
+        _bestScore = Double.NEGATIVE_INFINITY;
+        for (int r = 0; r < _restarts; r += 1) {
+            for (int c = 0; c < _size; c += 1) {
+                _plug[c] = c;
+            }
+            _pairs = 0;
+            if (r > 0) {
+                scramblePlugboard(random);
+            }
+            double score = climbOnce();
+            if (score > _bestScore) {
+                _bestScore = score;
+                System.arraycopy(_plug, 0, best, 0, _size);
+            }
+        }
+        return cycles(best);
+    }
+
+    /** Return the score of the plugboard last returned by climb. */
+    double bestScore() {
+        return _bestScore;
+    }
+
+    /** Plug up to _maxPairs random pairs into the empty _plug, using
+     *  RANDOM. */
+    private void scramblePlugboard(Random random) {
+        int pairs = random.nextInt(_maxPairs + 1);
+        for (int n = 0; n < pairs; n += 1) {
+            int a = random.nextInt(_size), b = random.nextInt(_size);
+            if (a != b && _plug[a] == a && _plug[b] == b) {
+                _plug[a] = b;
+                _plug[b] = a;
+                _pairs += 1;
+            }
+        }
+    }
+
+    /** Improve _plug by changing one pair at a time, keeping each change
+     *  that raises the score, until no change does.  Return the final
+     *  score. */
+    private double climbOnce() {
+        double score = score();
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _size; a += 1) {
+                for (int b = a + 1; b < _size; b += 1) {
+                    int pa = _plug[a], pb = _plug[b];
+                    int pairs = move(a, b);
+                    if (pairs > _maxPairs) {
+                        undo(a, b, pa, pb);
+                        continue;
+                    }
+                    double next = score();
+                    if (next > score) {
+                        score = next;
+                        _pairs = pairs;
+                        improved = true;
+                    } else {
+                        undo(a, b, pa, pb);
+                    }
+                }
+            }
+        }
+        return score;
+    }
+
+    /** Patch _plug to plug A to B (or to unplug them, if they are
+     *  already plugged together), re-pairing their former partners
+     *  with each other.  Return the resulting number of pairs. */
+    private int move(int a, int b) {
+        int[] plug = _plug;
+        int pa = plug[a], pb = plug[b];
+        if (pa == b) {
+            plug[a] = a;
+            plug[b] = b;
+            return _pairs - 1;
+        }
+        plug[a] = b;
+        plug[b] = a;
+        if (pa != a && pb != b) {
+            plug[pa] = pb;
+            plug[pb] = pa;
+            return _pairs;
+        } else if (pa != a) {
+            plug[pa] = pa;
+            return _pairs;
+        } else if (pb != b) {
+            plug[pb] = pb;
+            return _pairs;
+        }
+        return _pairs + 1;
+    }
+
+    /** Reverse move(A, B), where A and B were plugged to PA and PB. */
+    private void undo(int a, int b, int pa, int pb) {
+        _plug[pa] = a;
+        _plug[pb] = b;
+        _plug[a] = pa;
+        _plug[b] = pb;
+    }
+
+    /** Return the quadgram score of the decryption under _plug. */
+    private double score() {
+        int[] plug = _plug, cipher = _cipher, scramblers = _scramblers;
+        float[] logs = _logs;
+        int size = _size, shift = _shift, mask = _mask;
+        int index = 0;
+        float score = 0;
+        for (int i = 0, row = 0; i < cipher.length; i += 1, row += size) {
+            index = (index << shift
+                     | plug[scramblers[row + plug[cipher[i]]]]) & mask;
+            if (i >= 3) {
+                score += logs[index];
+            }
+        }
+        _evaluations += 1;
+        return score;
+    }
+
+    /** Return the cycles of plugboard table PLUG. */
+    private String cycles(int[] plug) {
+        StringBuilder result = new StringBuilder();
+        for (int a = 0; a < _size; a += 1) {
+            if (plug[a] > a) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(a))
+                    .append(_alphabet.toChar(plug[a])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Quadgram log-probabilities, indexed as in QuadgramTable. */
+    private final float[] _logs;
+    /** Bits per letter in an index into _logs. */
+    private final int _shift;
+    /** Mask keeping the last four letters of an index into _logs. */
+    private final int _mask;
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+    /** _scramblers[I * _size + C] is the rotors' and reflector's image
+     *  of C at message position I. */
+    private final int[] _scramblers;
+    /** Current plugboard, as a table of partners. */
+    private final int[] _plug;
+    /** Number of pairs in _plug. */
+    private int _pairs;
+    /** Largest number of pairs allowed. */
+    private int _maxPairs;
+    /** Number of starting plugboards. */
+    private int _restarts = 1;
+    /** Seed for random starting plugboards. */
+    private long _seed;
+    /** Number of plugboards scored. */
+    private long _evaluations;
+    /** Score of the best plugboard found by the last climb. */
+    private double _bestScore;
+}
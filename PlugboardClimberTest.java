@@ -0,0 +1,71 @@
+package enigma;
+
+import java.util.Scanner;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardClimber and
+ *  QuadgramTable classes.
+ *  @author NikkiTrueblood
+ */
+public class PlugboardClimberTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    private static final String PLAIN =
+        "ITWASTHEBESTOFTIMESITWASTHEWORSTOFTIMESITWASTHEAGEOFWISDOM"
+        + "ITWASTHEAGEOFFOOLISHNESSITWASTHEEPOCHOFBELIEFITWASTHEEPOCH"
+        + "OFINCREDULITYITWASTHESEASONOFLIGHTITWASTHESEASONOFDARKNESS"
+        + "ITWASTHESPRINGOFHOPEITWASTHEWINTEROFDESPAIRWEHADEVERYTHING"
+        + "BEFOREUSWEHADNOTHINGBEFOREUSWEWEREALLGOINGDIRECTTOHEAVEN";
+
+    private static final String PLUGBOARD =
+        "(AQ) (BJ) (CW) (EZ) (HR) (KT)";
+
+    @Test
+    public void testQuadgrams() {
+        QuadgramTable table = QuadgramTable.read(AZ,
+                new Scanner("TION 30\nTHAT 10\nTION 10\n"));
+        float[] logs = table.logs();
+        int[] tion = { 19, 8, 14, 13 };
+        int[] that = { 19, 7, 0, 19 };
+        assertEquals(Math.log10(0.8), table.score(tion, 0, 4), 1e-6);
+        assertEquals(Math.log10(0.2), table.score(that, 0, 4), 1e-6);
+        assertTrue(logs[0] < Math.log10(0.2));
+        int[] text = { 19, 7, 0, 19, 8, 14, 13 };
+        assertEquals(5, table.shift());
+        assertEquals(Math.log10(0.2) + Math.log10(0.8) + 2 * logs[0],
+                     table.score(text, 0, text.length), 1e-5);
+    }
+
+    @Test
+    public void testClimb() {
+        Machine mach = navalMachine("PKD", PLUGBOARD,
+                                    "B", "Beta", "III", "I");
+        String cipher = mach.convert(PLAIN);
+
+        QuadgramTable table = new QuadgramTable(AZ);
+        table.train(PLAIN);
+        PlugboardClimber climber =
+            new PlugboardClimber(mach.spec(), "PKD", cipher, table);
+        climber.setRestarts(4);
+        climber.setSeed(61);
+        assertEquals(PLUGBOARD, climber.climb());
+        assertEquals(table.score(toInts(PLAIN), 0, PLAIN.length()),
+                     climber.bestScore(), 1e-2);
+        assertTrue(climber.evaluations() > 0);
+    }
+
+    private int[] toInts(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = AZ.toInt(text.charAt(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,147 @@
+package enigma;
+
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Log-probabilities of the four-letter sequences (quadgrams) of some
+ *  language, used to score candidate decryptions.  Counts are gathered
+ *  by add or train and then compiled into one flat table indexed by
+ *  the four letters' alphabet indices packed into a single int with
+ *  shift() bits apiece, so that scoring a text keeps a rolling index
+ *  with one shift, or and mask per letter and one array load.
+ *  @author NikkiTrueblood
+ */
+final class QuadgramTable {
+
+    /** An empty table for quadgrams of ALPHABET. */
+    QuadgramTable(Alphabet alphabet) {
+        int shift = 32 - Integer.numberOfLeadingZeros(
+            Math.max(1, alphabet.size() - 1));
+        if (4 * shift > MAX_BITS) {
+            throw error("alphabet too large for quadgrams: %d letters",
+                        alphabet.size());
+        }
+        _alphabet = alphabet;
+        _shift = shift;
+        _counts = new long[1 << (4 * shift)];
+    }
+
+    /** Return a table for ALPHABET read from INPUT, whose lines each
+     *  hold a quadgram and its count, as in "TION 13168375". */
+    static QuadgramTable read(Alphabet alphabet, Scanner input) {
+        QuadgramTable table = new QuadgramTable(alphabet);
+        while (input.hasNext()) {
+            String quadgram = input.next();
+            if (!input.hasNextLong()) {
+                throw error("missing count for quadgram %s", quadgram);
+            }
+            table.add(quadgram, input.nextLong());
+        }
+        return table;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of bits each letter takes in a table index. */
+    int shift() {
+        return _shift;
+    }
+
+    /** Return the mask that keeps the last four letters of a rolling
+     *  table index. */
+    int mask() {
+        return _counts.length - 1;
+    }
+
+    /** Add COUNT occurrences of QUADGRAM, four characters of my
+     *  alphabet. */
+    void add(CharSequence quadgram, long count) {
+        if (quadgram.length() != 4 || count < 0) {
+            throw error("bad quadgram count: %s %d", quadgram, count);
+        }
+        int index = 0;
+        for (int i = 0; i < 4; i += 1) {
+            index = index << _shift | _alphabet.toInt(quadgram.charAt(i));
+        }
+        _counts[index] += count;
+        _total += count;
+        _logs = null;
+    }
+
+    /** Count the quadgrams of TEXT, ignoring characters that are not in
+     *  my alphabet. */
+    void train(CharSequence text) {
+        int index = 0, run = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!_alphabet.contains(c)) {
+                continue;
+            }
+            index = (index << _shift | _alphabet.toInt(c)) & mask();
+            run += 1;
+            if (run >= 4) {
+                _counts[index] += 1;
+                _total += 1;
+            }
+        }
+        _logs = null;
+    }
+
+    /** Return the compiled table: with S = shift(), entry
+     *  A << 3S | B << 2S | C << S | D is the base-10 logarithm of the
+     *  probability of the quadgram with indices A, B, C, D.  Quadgrams
+     *  never seen (and unused entries) get a small floor value rather
+     *  than minus infinity.  The result is shared and must not be
+     *  modified. */
+    float[] logs() {
+        if (_logs == null) {
+            if (_total == 0) {
+                throw error("no quadgrams counted");
+            }
+            float[] logs = new float[_counts.length];
+            double total = _total;
+            float floor = (float) Math.log10(FLOOR / total);
+            for (int i = 0; i < logs.length; i += 1) {
+                logs[i] = _counts[i] == 0 ? floor
+                    : (float) Math.log10(_counts[i] / total);
+            }
+            _logs = logs;
+        }
+        return _logs;
+    }
+
+    /** Return the score of the LEN alphabet indices of TEXT starting at
+     *  OFF: the sum of the log-probabilities of its quadgrams. */
+    double score(int[] text, int off, int len) {
+        float[] logs = logs();
+        int shift = _shift, mask = mask(), index = 0;
+        float score = 0;
+        for (int i = off; i < off + len; i += 1) {
+            index = (index << shift | text[i]) & mask;
+            if (i >= off + 3) {
+                score += logs[index];
+            }
+        }
+        return score;
+    }
+
+    /** Largest number of bits in a table index. */
+    private static final int MAX_BITS = 24;
+    /** Count assumed for quadgrams never seen. */
+    private static final double FLOOR = 0.01;
+
+    /** The alphabet of my quadgrams. */
+    private final Alphabet _alphabet;
+    /** Number of bits per letter in a table index. */
+    private final int _shift;
+    /** Number of occurrences of each quadgram, indexed as in logs(). */
+    private final long[] _counts;
+    /** Total of _counts. */
+    private long _total;
+    /** Compiled log-probabilities, or null if not yet compiled. */
+    private float[] _logs;
+}
@@ -64,9 +64,6 @@ class Rotor {
      *  according to my permutation. */
     int convertForward(int p) {
         int result = _permutation.permute(p + setting());
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
         return _permutation.wrap(result - setting());
     }
 
@@ -74,9 +71,6 @@ class Rotor {
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
         int result = _permutation.invert(e + setting());
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
         return _permutation.wrap(result - setting());
     }
 
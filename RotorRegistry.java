@@ -0,0 +1,196 @@
+package enigma;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+import static enigma.EnigmaException.*;
+
+/** The catalog of rotors available to a machine, indexed by name so
+ *  that finding a rotor takes constant time however many there are, and
+ *  sorted once into reflectors, fixed rotors and moving rotors.  A
+ *  registry may be built from rotors already made or from descriptions
+ *  of them, in which case each rotor is made only when it is first
+ *  needed, so that the cost of a large catalog is in the rotors actually
+ *  used.  A registry never changes what it holds, so machines copied
+ *  from one another share it rather than each indexing the catalog
+ *  again, and it may be used by several threads.
+ *  @author NikkiTrueblood
+ */
+final class RotorRegistry {
+
+    /** Kind of a rotor that reflects. */
+    static final int REFLECTOR = 0;
+    /** Kind of a rotor that neither reflects nor rotates. */
+    static final int FIXED = 1;
+    /** Kind of a rotor that rotates. */
+    static final int MOVING = 2;
+
+    /** A registry of ROTORS, whose names must be distinct. */
+    RotorRegistry(Collection<Rotor> rotors) {
+        this(names(rotors), kinds(rotors), null);
+        int i = 0;
+        for (Rotor r : rotors) {
+            _rotors.set(i, r);
+            i += 1;
+        }
+    }
+
+    /** A registry of NAMES.length rotors, not yet made.  Rotor I is
+     *  named NAMES[I], which must be distinct, and is of kind KINDS[I]
+     *  (REFLECTOR, FIXED or MOVING).  MAKER makes rotor I, given I, when
+     *  it is first needed. */
+    RotorRegistry(String[] names, int[] kinds, IntFunction<Rotor> maker) {
+        int n = names.length;
+        _maker = maker;
+        _rotors = new AtomicReferenceArray<>(n);
+        _byName = new HashMap<>(Math.max(16, 2 * n));
+        int[] counts = new int[MOVING + 1];
+        for (int i = 0; i < n; i += 1) {
+            if (_byName.put(names[i], i) != null) {
+                throw error("duplicate rotor name: %s", names[i]);
+            }
+            counts[kinds[i]] += 1;
+        }
+        int[][] byKind = new int[MOVING + 1][];
+        for (int k = 0; k <= MOVING; k += 1) {
+            byKind[k] = new int[counts[k]];
+            counts[k] = 0;
+        }
+        int[] all = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            all[i] = i;
+            byKind[kinds[i]][counts[kinds[i]]] = i;
+            counts[kinds[i]] += 1;
+        }
+        _all = new View(all);
+        _reflectors = new View(byKind[REFLECTOR]);
+        _fixed = new View(byKind[FIXED]);
+        _moving = new View(byKind[MOVING]);
+    }
+
+    /** Return the rotor named NAME, making it if need be, or null if
+     *  there is none. */
+    Rotor get(String name) {
+        Integer i = _byName.get(name);
+        return i == null ? null : rotor(i);
+    }
+
+    /** Return true iff there is a rotor named NAME. */
+    boolean contains(String name) {
+        return _byName.containsKey(name);
+    }
+
+    /** Return the number of rotors. */
+    int size() {
+        return _all.size();
+    }
+
+    /** Return the number of rotors made so far. */
+    int made() {
+        int result = 0;
+        for (int i = 0; i < _rotors.length(); i += 1) {
+            if (_rotors.get(i) != null) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return all the rotors, in the order given to my constructor.
+     *  Each is made as it is fetched from the list. */
+    List<Rotor> rotors() {
+        return _all;
+    }
+
+    /** Return the reflectors, in the order given to my constructor. */
+    List<Rotor> reflectors() {
+        return _reflectors;
+    }
+
+    /** Return the rotors that neither reflect nor rotate, in the order
+     *  given to my constructor. */
+    List<Rotor> fixed() {
+        return _fixed;
+    }
+
+    /** Return the rotors that rotate, in the order given to my
+     *  constructor. */
+    List<Rotor> moving() {
+        return _moving;
+    }
+
+    /** Return rotor I, making it if need be. */
+    private Rotor rotor(int i) {
+        Rotor r = _rotors.get(i);
+        if (r == null) {
+            _rotors.compareAndSet(i, null, _maker.apply(i));
+            r = _rotors.get(i);
+        }
+        return r;
+    }
+
+    /** Return the names of ROTORS, in order. */
+    private static String[] names(Collection<Rotor> rotors) {
+        String[] result = new String[rotors.size()];
+        int i = 0;
+        for (Rotor r : rotors) {
+            result[i] = r.name();
+            i += 1;
+        }
+        return result;
+    }
+
+    /** Return the kinds of ROTORS, in order. */
+    private static int[] kinds(Collection<Rotor> rotors) {
+        int[] result = new int[rotors.size()];
+        int i = 0;
+        for (Rotor r : rotors) {
+            result[i] = r.reflecting() ? REFLECTOR
+                : r.rotates() ? MOVING : FIXED;
+            i += 1;
+        }
+        return result;
+    }
+
+    /** An unmodifiable list of the rotors with some of my indices. */
+    private final class View extends AbstractList<Rotor> {
+
+        /** A list of the rotors with indices INDICES, in that order. */
+        View(int[] indices) {
+            _indices = indices;
+        }
+
+        @Override
+        public Rotor get(int k) {
+            return rotor(_indices[k]);
+        }
+
+        @Override
+        public int size() {
+            return _indices.length;
+        }
+
+        /** Indices of my rotors. */
+        private final int[] _indices;
+    }
+
+    /** Makes rotors not yet made, given their indices, or null if all
+     *  were given made. */
+    private final IntFunction<Rotor> _maker;
+    /** The rotors by index, or null for those not yet made. */
+    private final AtomicReferenceArray<Rotor> _rotors;
+    /** Indices of the rotors by name. */
+    private final HashMap<String, Integer> _byName;
+    /** All rotors, in order. */
+    private final List<Rotor> _all;
+    /** The reflectors among them. */
+    private final List<Rotor> _reflectors;
+    /** The fixed rotors among them. */
+    private final List<Rotor> _fixed;
+    /** The moving rotors among them. */
+    private final List<Rotor> _moving;
+}
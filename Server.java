@@ -0,0 +1,363 @@
+package enigma;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running encryption service on a local TCP port, so that a
+ *  machine's configuration is read and compiled once rather than once
+ *  per message.  One thread serves every connection through a
+ *  non-blocking Selector.
+ *
+ *  The protocol is the input and output format of Main, a line at a
+ *  time.  A client sends '*' lines and message lines exactly as they
+ *  would appear in an input file; each message line is answered with
+ *  its conversion, in groups of five, and each blank line with a blank
+ *  line.  Rotor positions carry over from one message line to the next
+ *  until the next '*' line, and a '*' line without a plugboard keeps the
+ *  connection's current one.  An error is answered with a line
+ *  "Error: MESSAGE", after which the connection needs a new '*' line.
+ *  Each connection has its own machine, but the compiled forms of the
+ *  rotor and plugboard combinations it asks for are shared with all
+ *  connections, so a combination seen before costs nothing to set up.
+ *  @author NikkiTrueblood
+ */
+final class Server {
+
+    /** A server for machines like MACHINE (whose available rotors are
+     *  used) on PORT of the loopback interface, or on any free port if
+     *  PORT is 0. */
+    Server(Machine machine, int port) {
+        _machine = machine;
+        _charset = Charset.defaultCharset();
+        try {
+            _channel = ServerSocketChannel.open();
+            _channel.bind(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), port));
+            _channel.configureBlocking(false);
+            _selector = Selector.open();
+            _channel.register(_selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException | IllegalArgumentException excp) {
+            throw error("could not listen on port %d: %s", port,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the port I listen on. */
+    int port() {
+        return _channel.socket().getLocalPort();
+    }
+
+    /** Serve connections until stop is called, then close them all. */
+    void serve() {
+        try {
+            while (!_stopped) {
+                _selector.select();
+                Iterator<SelectionKey> keys =
+                    _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((Connection) key.attachment()).ready(key);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("server failed: %s", excp.getMessage());
+        } finally {
+            for (SelectionKey key : _selector.keys()) {
+                close(key);
+            }
+            try {
+                _selector.close();
+            } catch (IOException excp) {
+                /* Nothing more to release. */
+            }
+        }
+    }
+
+    /** Make serve return, from any thread. */
+    void stop() {
+        _stopped = true;
+        _selector.wakeup();
+    }
+
+    /** Return the number of compiled rotor and plugboard combinations
+     *  currently kept. */
+    int cachedSpecs() {
+        return _specs.size();
+    }
+
+    /** Accept a pending connection, if any. */
+    private void accept() throws IOException {
+        SocketChannel socket = _channel.accept();
+        if (socket == null) {
+            return;
+        }
+        socket.configureBlocking(false);
+        socket.register(_selector, SelectionKey.OP_READ,
+                        new Connection(socket));
+    }
+
+    /** Close the channel of KEY, ignoring failures. */
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException excp) {
+            /* Nothing more to release. */
+        }
+    }
+
+    /** Give MACHINE the rotors named ROTORS and plugboard cycles
+     *  PLUGBOARD, at their 0 settings, using the compiled combination if
+     *  it is kept and otherwise compiling it on MACHINE and keeping it. */
+    private void install(Machine machine, String[] rotors,
+                         String plugboard) {
+        String key = String.join(" ", rotors) + "|" + plugboard;
+        MachineSpec spec = _specs.get(key);
+        if (spec != null) {
+            machine.setSpec(spec);
+        } else {
+            machine.resetRotors();
+            machine.insertRotors(rotors);
+            machine.setPlugboard(new Permutation(plugboard,
+                                                 machine.alphabet()));
+            _specs.put(key, machine.spec());
+        }
+    }
+
+    /** One client's connection and the state of its session. */
+    private class Connection {
+
+        /** A session on SOCKET. */
+        Connection(SocketChannel socket) {
+            _socket = socket;
+            _in = ByteBuffer.allocate(BUFFER_SIZE);
+            _out = ByteBuffer.allocate(BUFFER_SIZE);
+            _session = _machine.copy();
+            _message = new char[BUFFER_SIZE];
+        }
+
+        /** Read, write or both, as KEY says my socket is ready to.  If
+         *  anything fails, close just my connection, first telling my
+         *  client why if I can, so that one client cannot stop the
+         *  others' service. */
+        void ready(SelectionKey key) {
+            try {
+                if (key.isReadable()) {
+                    read();
+                }
+                if (key.isValid() && _out.position() > 0) {
+                    write();
+                }
+                if (_eof && _out.position() == 0) {
+                    close(key);
+                } else if (_out.position() > MAX_PENDING) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else if (_out.position() > 0) {
+                    key.interestOps(SelectionKey.OP_READ
+                                    | SelectionKey.OP_WRITE);
+                } else {
+                    key.interestOps(_eof ? 0 : SelectionKey.OP_READ);
+                }
+            } catch (IOException excp) {
+                close(key);
+            } catch (RuntimeException excp) {
+                reply("Error: " + excp.getMessage());
+                try {
+                    write();
+                } catch (IOException unsent) {
+                    /* The connection is being closed anyway. */
+                }
+                close(key);
+            }
+        }
+
+        /** Read what has arrived and answer each complete line. */
+        private void read() throws IOException {
+            if (!_in.hasRemaining()) {
+                if (_in.capacity() >= MAX_LINE) {
+                    reply("Error: line too long");
+                    _eof = true;
+                    return;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(2 * _in.capacity());
+                _in.flip();
+                _in = bigger.put(_in);
+            }
+            if (_socket.read(_in) < 0) {
+                _eof = true;
+            }
+            byte[] bytes = _in.array();
+            int start = 0;
+            for (int p = 0; p < _in.position(); p += 1) {
+                if (bytes[p] == '\n') {
+                    line(bytes, start, p);
+                    start = p + 1;
+                }
+            }
+            if (_eof && start < _in.position()) {
+                line(bytes, start, _in.position());
+                start = _in.position();
+            }
+            _in.flip().position(start);
+            _in.compact();
+        }
+
+        /** Answer the line in BYTES[START .. END), less any carriage
+         *  return at its end. */
+        private void line(byte[] bytes, int start, int end) {
+            if (end > start && bytes[end - 1] == '\r') {
+                end -= 1;
+            }
+            String line =
+                _charset.decode(ByteBuffer.wrap(bytes, start, end - start))
+                .toString();
+            try {
+                if (line.trim().isEmpty()) {
+                    reply("");
+                } else if (line.trim().startsWith("*")) {
+                    configure(line.trim());
+                } else if (!_configured) {
+                    throw error("No configuration for message.");
+                } else {
+                    reply(convert(line));
+                }
+            } catch (EnigmaException excp) {
+                _configured = false;
+                reply("Error: " + excp.getMessage());
+            }
+        }
+
+        /** Set up my machine as the '*' line LINE directs. */
+        private void configure(String line) {
+            _configured = false;
+            Main.Settings settings = Main.parseSettings(_session, line);
+            String plugboard = settings.plugboard() == null ? _plugboard
+                : settings.plugboard();
+            install(_session, settings.rotors(), plugboard);
+            _session.setRotors(settings.setting());
+            _plugboard = plugboard;
+            _configured = true;
+        }
+
+        /** Return the conversion of the message line LINE, in groups of
+         *  MessageOutput.DEFAULT_GROUP as Main writes it. */
+        private String convert(String line) {
+            if (line.length() > _message.length) {
+                _message = new char[line.length()];
+            }
+            int n = 0;
+            for (int i = 0; i < line.length(); i += 1) {
+                char c = line.charAt(i);
+                if (!Character.isWhitespace(c)) {
+                    _message[n] = c;
+                    n += 1;
+                }
+            }
+            _session.convert(_message, 0, n, _message, 0);
+            if (Metrics.enabled()) {
+                Metrics.get().message();
+            }
+            int group = MessageOutput.DEFAULT_GROUP;
+            StringBuilder result = new StringBuilder(n + n / group);
+            for (int i = 0; i < n; i += 1) {
+                result.append(_message[i]);
+                if ((i + 1) % group == 0) {
+                    result.append(' ');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Queue LINE and a line terminator to be sent. */
+        private void reply(String line) {
+            ByteBuffer bytes = _charset.encode(CharBuffer.wrap(line + "\n"));
+            if (_out.remaining() < bytes.remaining()) {
+                int size = _out.capacity();
+                while (size - _out.position() < bytes.remaining()) {
+                    size *= 2;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(size);
+                _out.flip();
+                _out = bigger.put(_out);
+            }
+            _out.put(bytes);
+        }
+
+        /** Send as much queued output as my socket will take. */
+        private void write() throws IOException {
+            _out.flip();
+            _socket.write(_out);
+            _out.compact();
+        }
+
+        /** My client's socket. */
+        private final SocketChannel _socket;
+        /** Bytes received and not yet answered. */
+        private ByteBuffer _in;
+        /** Bytes queued to be sent, in [0, position). */
+        private ByteBuffer _out;
+        /** My machine. */
+        private final Machine _session;
+        /** Current plugboard cycles. */
+        private String _plugboard = "";
+        /** True iff a '*' line has set up _session since the last
+         *  error. */
+        private boolean _configured;
+        /** True once the client has finished sending. */
+        private boolean _eof;
+        /** Whitespace-free characters of the current message line. */
+        private char[] _message;
+    }
+
+    /** Initial size of each connection's buffers. */
+    private static final int BUFFER_SIZE = 1 << 13;
+    /** Longest line a client may send, in bytes. */
+    private static final int MAX_LINE = 1 << 24;
+    /** Bytes of unsent output beyond which a connection is not read
+     *  until its client catches up. */
+    private static final int MAX_PENDING = 1 << 20;
+    /** Number of compiled rotor and plugboard combinations kept. */
+    private static final int SPEC_CACHE_SIZE = 256;
+
+    /** Machine whose available rotors connections may use. */
+    private final Machine _machine;
+    /** Charset of the protocol's text. */
+    private final Charset _charset;
+    /** The listening socket. */
+    private final ServerSocketChannel _channel;
+    /** Selector over the listening socket and all connections. */
+    private final Selector _selector;
+    /** Compiled rotor and plugboard combinations, keyed by rotor names
+     *  and plugboard cycles, least recently used first. */
+    private final Map<String, MachineSpec> _specs =
+        new LinkedHashMap<String, MachineSpec>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, MachineSpec> eldest) {
+                return size() > SPEC_CACHE_SIZE;
+            }
+        };
+    /** True once stop has been called. */
+    private volatile boolean _stopped;
+}
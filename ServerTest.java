@@ -0,0 +1,100 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author NikkiTrueblood
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the machine with the rotors that the sessions use, not
+     *  yet inserted. */
+    private Machine machine() {
+        return navalMachine(null, null, "B", "Beta", "III", "IV", "I");
+    }
+
+    @Test
+    public void testSessions() throws Exception {
+        Server server = new Server(machine(), 0);
+        Thread serving = new Thread(server::serve);
+        serving.start();
+        try {
+            for (int n = 0; n < 2; n += 1) {
+                try (Socket socket = new Socket(
+                        InetAddress.getLoopbackAddress(), server.port())) {
+                    PrintWriter out =
+                        new PrintWriter(socket.getOutputStream(), true);
+                    BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream()));
+                    out.print("FROM\n");
+                    out.print("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) "
+                              + "(BY)\n");
+                    out.print("FROM HIS SHOULDER\r\n\nHIAWATHA\n");
+                    out.print("* B Beta III IV I AXLE\nFROMHIS\n");
+                    out.flush();
+                    assertEquals("Error: No configuration for message.",
+                                 in.readLine());
+                    assertEquals("QVPQS OKOIL PUBKJ ", in.readLine());
+                    assertEquals("", in.readLine());
+                    assertEquals("ZPISF XDW", in.readLine());
+                    assertEquals("QVPQS OK", in.readLine());
+                }
+            }
+            assertEquals(1, server.cachedSpecs());
+        } finally {
+            server.stop();
+            serving.join();
+        }
+    }
+
+    @Test
+    public void testTooManyRotors() throws Exception {
+        Server server = new Server(
+            new Machine(AZ, 5, 3, navalRotors("B", "Beta", "III", "IV",
+                                              "I", "II")), 0);
+        Thread serving = new Thread(server::serve);
+        serving.start();
+        try (Socket first = new Socket(InetAddress.getLoopbackAddress(),
+                                       server.port())) {
+            PrintWriter out1 = new PrintWriter(first.getOutputStream(), true);
+            BufferedReader in1 = new BufferedReader(
+                new InputStreamReader(first.getInputStream()));
+            out1.print("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+                       + "FROM\n");
+            out1.flush();
+            assertEquals("QVPQ", in1.readLine());
+            for (int n = 0; n < 2; n += 1) {
+                try (Socket second = new Socket(
+                        InetAddress.getLoopbackAddress(), server.port())) {
+                    PrintWriter out2 =
+                        new PrintWriter(second.getOutputStream(), true);
+                    BufferedReader in2 = new BufferedReader(
+                        new InputStreamReader(second.getInputStream()));
+                    out2.print("* B Beta III IV I II AXLE\n");
+                    out2.flush();
+                    assertEquals("Error: Too many rotors given.",
+                                 in2.readLine());
+                }
+            }
+            out1.print("HISSHOULDER\n");
+            out1.flush();
+            assertEquals("SOKOI LPUBK J", in1.readLine());
+        } finally {
+            server.stop();
+            serving.join();
+        }
+    }
+}
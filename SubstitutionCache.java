@@ -0,0 +1,332 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A cache of a compiled machine's substitutions, so that converting a
+ *  character at rotor positions seen before is one table lookup rather
+ *  than a pass through every rotor.  For fixed rotors and plugboard the
+ *  machine is a pure function of its positions.  Between events (see
+ *  MachineKernel.skip) only the fast rotor turns, so the cache is kept
+ *  in slots, one for each combination of the positions of the other
+ *  rotors, each holding the substitution for every fast rotor position
+ *  and input.  A slot is looked up once per run of quiet keypresses;
+ *  within a run each character costs one load.
+ *
+ *  Entries are filled lazily, as they are first needed.  The number of
+ *  slots is bounded by the memory allowed, and once all are in use the
+ *  CLOCK algorithm picks the slot to reuse.  The tables may be kept off
+ *  the Java heap.  A cache is not thread-safe: each thread converting
+ *  with one needs its own.
+ *  @author NikkiTrueblood
+ */
+final class SubstitutionCache {
+
+    /** A cache for KERNEL using at most MAXBYTES bytes of tables (but
+     *  room for at least one slot), off the heap iff OFFHEAP. */
+    SubstitutionCache(MachineKernel kernel, long maxBytes, boolean offHeap) {
+        _slots = slots(kernel.size(), maxBytes, offHeap);
+        _slotSize = kernel.size() * kernel.size();
+        _offHeap = offHeap;
+        try {
+            if (offHeap) {
+                _table = ByteBuffer.allocateDirect(2 * _slots * _slotSize)
+                    .asCharBuffer();
+            } else {
+                _table = CharBuffer.allocate(_slots * _slotSize);
+            }
+        } catch (OutOfMemoryError excp) {
+            throw error("cannot allocate %d bytes of cache",
+                        2L * _slots * _slotSize);
+        }
+        _keys = new long[_slots];
+        _referenced = new boolean[_slots];
+        int cap = Integer.highestOneBit(2 * _slots - 1) << 1;
+        _indexKeys = new long[Math.max(cap, 2)];
+        _indexSlots = new int[_indexKeys.length];
+        retarget(kernel);
+    }
+
+    /** Return the number of slots of a cache for an alphabet of SIZE
+     *  characters using at most MAXBYTES bytes of tables, off the heap
+     *  iff OFFHEAP.  There is room for at least one slot, and no more
+     *  than fit in one buffer: Integer.MAX_VALUE chars on the heap, or
+     *  as many bytes off it. */
+    static int slots(int size, long maxBytes, boolean offHeap) {
+        long slotBytes = 2L * size * size;
+        if (size <= 0 || slotBytes > Integer.MAX_VALUE) {
+            throw error("alphabet too large to cache");
+        }
+        if (maxBytes < 0) {
+            throw error("bad cache size: %d bytes", maxBytes);
+        }
+        long limit = offHeap ? Integer.MAX_VALUE / slotBytes
+            : Integer.MAX_VALUE / (slotBytes / 2);
+        long slots = Math.max(1, maxBytes / slotBytes);
+        return (int) Math.min(MAX_SLOTS, Math.min(slots, limit));
+    }
+
+    /** Forget everything cached and cache KERNEL's substitutions instead.
+     *  KERNEL must have the same alphabet size as the kernel I was made
+     *  for; the tables are reused. */
+    void retarget(MachineKernel kernel) {
+        if (kernel.size() * kernel.size() != _slotSize) {
+            throw error("cache is for another alphabet size");
+        }
+        long states = 1;
+        for (int k = 0; k < kernel.numRotors() - 1; k += 1) {
+            if (states > Long.MAX_VALUE / kernel.size()) {
+                throw error("too many rotor positions to cache");
+            }
+            states *= kernel.size();
+        }
+        _kernel = kernel;
+        _fold = null;
+        _size = kernel.size();
+        _fastRotates = kernel.rotates(kernel.numRotors() - 1);
+        Arrays.fill(_indexKeys, EMPTY);
+        Arrays.fill(_keys, EMPTY);
+        _used = 0;
+        _hand = 0;
+        _misses = 0;
+        _lookups = 0;
+    }
+
+    /** Return the kernel whose substitutions I cache. */
+    MachineKernel kernel() {
+        return _kernel;
+    }
+
+    /** Return true iff my tables are off the Java heap. */
+    boolean offHeap() {
+        return _offHeap;
+    }
+
+    /** Return the number of conversions made through me. */
+    long lookups() {
+        return _lookups;
+    }
+
+    /** Return the number of those that were not yet cached. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF into DST
+     *  starting at DSTOFF, stepping the rotors at POS before each one,
+     *  as MachineKernel.convert does. */
+    void convert(int[] pos, char[] src, int off, int len,
+                 char[] dst, int dstOff) {
+        Alphabet alpha = _kernel.alphabet();
+        int fast = pos.length - 1;
+        for (int i = 0; i < len;) {
+            int end = i + begin(pos, len - i);
+            for (; i < end; i += 1) {
+                int c = alpha.toInt(src[off + i]);
+                dst[dstOff + i] = alpha.toChar(substitute(pos, fast, c));
+                if (i + 1 < end) {
+                    turnFast(pos, fast);
+                }
+            }
+        }
+    }
+
+    /** Convert the LEN indices of SRC starting at OFF into DST starting
+     *  at DSTOFF, stepping the rotors at POS before each one, as
+     *  MachineKernel.convert does. */
+    void convert(int[] pos, int[] src, int off, int len,
+                 int[] dst, int dstOff) {
+        int fast = pos.length - 1;
+        for (int i = 0; i < len;) {
+            int end = i + begin(pos, len - i);
+            for (; i < end; i += 1) {
+                dst[dstOff + i] = substitute(pos, fast, src[off + i]);
+                if (i + 1 < end) {
+                    turnFast(pos, fast);
+                }
+            }
+        }
+    }
+
+    /** Convert the LEN bytes of SRC starting at OFF into DST starting at
+     *  DSTOFF, stepping the rotors at POS before each one, as
+     *  MachineKernel.convert does. */
+    void convert(int[] pos, byte[] src, int off, int len,
+                 byte[] dst, int dstOff) {
+        int fast = pos.length - 1;
+        for (int i = 0; i < len;) {
+            int end = i + begin(pos, len - i);
+            for (; i < end; i += 1) {
+                int c = src[off + i] & BYTE_MASK;
+                dst[dstOff + i] = (byte) substitute(pos, fast, c);
+                if (i + 1 < end) {
+                    turnFast(pos, fast);
+                }
+            }
+        }
+    }
+
+    /** Step the rotors at POS and make current the slot for their new
+     *  positions.  Return the number of keypresses, at most LIMIT, for
+     *  which that slot stays current: this one, and those that follow
+     *  during which only the fast rotor turns. */
+    private int begin(int[] pos, int limit) {
+        _kernel.step(pos);
+        long key = 0;
+        for (int k = 0; k < pos.length - 1; k += 1) {
+            key = key * _size + pos[k];
+        }
+        _base = slot(key) * _slotSize;
+        _fold = _kernel.fold(pos, _fold);
+        long quiet = _kernel.quietSteps(pos);
+        int run = (int) Math.min(limit, Math.min(quiet, limit) + 1);
+        _lookups += run;
+        return run;
+    }
+
+    /** Return the result of converting C with the rotors at POS, whose
+     *  fast rotor is in slot FAST, from the current slot, filling the
+     *  entry if needed. */
+    private int substitute(int[] pos, int fast, int c) {
+        int index = _base + pos[fast] * _size + c;
+        int v = _table.get(index);
+        if (v == 0) {
+            v = _kernel.scramble(pos, c, _fold) + 1;
+            _table.put(index, (char) v);
+            _misses += 1;
+        }
+        return v - 1;
+    }
+
+    /** Turn the fast rotor, in slot FAST of POS, one position, if it
+     *  rotates. */
+    private void turnFast(int[] pos, int fast) {
+        if (_fastRotates) {
+            int p = pos[fast] + 1;
+            pos[fast] = p == _size ? 0 : p;
+        }
+    }
+
+    /** Return the slot holding KEY, the packed positions of all but the
+     *  fast rotor, assigning one if there is none. */
+    private int slot(long key) {
+        int mask = _indexKeys.length - 1;
+        int h = hash(key) & mask;
+        for (; _indexKeys[h] != EMPTY; h = (h + 1) & mask) {
+            if (_indexKeys[h] == key) {
+                int s = _indexSlots[h];
+                _referenced[s] = true;
+                return s;
+            }
+        }
+        int s;
+        if (_used < _slots) {
+            s = _used;
+            _used += 1;
+        } else {
+            s = victim();
+            unindex(_keys[s]);
+            h = hash(key) & mask;
+            while (_indexKeys[h] != EMPTY) {
+                h = (h + 1) & mask;
+            }
+        }
+        _keys[s] = key;
+        _referenced[s] = true;
+        _indexKeys[h] = key;
+        _indexSlots[h] = s;
+        for (int i = s * _slotSize, end = i + _slotSize; i < end; i += 1) {
+            _table.put(i, (char) 0);
+        }
+        return s;
+    }
+
+    /** Return the slot to reuse, by the CLOCK algorithm: the first slot
+     *  from the hand on not referenced since the hand last passed it. */
+    private int victim() {
+        while (_referenced[_hand]) {
+            _referenced[_hand] = false;
+            _hand = (_hand + 1) % _slots;
+        }
+        int s = _hand;
+        _hand = (_hand + 1) % _slots;
+        return s;
+    }
+
+    /** Remove KEY from the index, shifting back any entries that probed
+     *  past it. */
+    private void unindex(long key) {
+        int mask = _indexKeys.length - 1;
+        int h = hash(key) & mask;
+        while (_indexKeys[h] != key) {
+            h = (h + 1) & mask;
+        }
+        int gap = h;
+        for (h = (h + 1) & mask; _indexKeys[h] != EMPTY; h = (h + 1) & mask) {
+            int home = hash(_indexKeys[h]) & mask;
+            if (((h - home) & mask) >= ((h - gap) & mask)) {
+                _indexKeys[gap] = _indexKeys[h];
+                _indexSlots[gap] = _indexSlots[h];
+                gap = h;
+            }
+        }
+        _indexKeys[gap] = EMPTY;
+    }
+
+    /** Return a well-mixed hash of KEY. */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Largest number of slots, so that the index stays small enough
+     *  to size with int arithmetic. */
+    private static final int MAX_SLOTS = 1 << 24;
+    /** Marks an unused entry of _indexKeys or _keys. */
+    private static final long EMPTY = -1;
+    /** Mask taking a byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Kernel whose substitutions I cache. */
+    private MachineKernel _kernel;
+    /** Its alphabet size. */
+    private int _size;
+    /** True iff its fast rotor rotates. */
+    private boolean _fastRotates;
+    /** Number of entries in a slot: one per fast rotor position and
+     *  input. */
+    private final int _slotSize;
+    /** Number of slots. */
+    private final int _slots;
+    /** True iff _table is off the heap. */
+    private final boolean _offHeap;
+    /** The slots, one after another.  Entry P * _size + C of a slot is
+     *  one more than the conversion of C with the fast rotor at P, or 0
+     *  if that is not yet known. */
+    private final CharBuffer _table;
+    /** Key held by each slot, or EMPTY. */
+    private final long[] _keys;
+    /** Whether each slot was used since the CLOCK hand last passed. */
+    private final boolean[] _referenced;
+    /** Open-addressing index from keys to slots: the keys, or EMPTY,
+     *  ... */
+    private final long[] _indexKeys;
+    /** ... and the corresponding slots. */
+    private final int[] _indexSlots;
+    /** Number of slots ever assigned since retarget. */
+    private int _used;
+    /** Position of the CLOCK hand. */
+    private int _hand;
+    /** Fold of the kernel's slowest rotors at the current slot's
+     *  positions, or null. */
+    private MachineKernel.Fold _fold;
+    /** Start in _table of the current slot. */
+    private int _base;
+    /** Number of conversions made. */
+    private long _lookups;
+    /** Number of conversions not found in the cache. */
+    private long _misses;
+}
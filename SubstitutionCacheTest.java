@@ -0,0 +1,105 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SubstitutionCache class.
+ *  @author NikkiTrueblood
+ */
+public class SubstitutionCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** The rotors of the machines under test. */
+    private static final List<Rotor> ROTORS =
+        navalRotors("B", "Beta", "III", "IV", "I");
+
+    /** Return a machine at SETTING caching in MAXBYTES, off the heap iff
+     *  OFFHEAP. */
+    private Machine machine(String setting, long maxBytes, boolean offHeap) {
+        Machine mach = new Machine(AZ, 5, 3, ROTORS);
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        mach.setRotors(setting);
+        mach.setCache(maxBytes, offHeap);
+        return mach;
+    }
+
+    @Test
+    public void testSameResults() {
+        Random random = new Random(5);
+        int[] text = new int[200000];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = random.nextInt(AZ.size());
+        }
+        int[] expected = text.clone();
+        Machine plain = machine("AUIP", 0, false);
+        plain.convert(expected, 0, expected.length, expected, 0);
+        for (long bytes : new long[] { 1, 10000, 1 << 24 }) {
+            for (boolean offHeap : new boolean[] { false, true }) {
+                Machine mach = machine("AUIP", bytes, offHeap);
+                int[] result = text.clone();
+                for (int off = 0; off < result.length; off += 777) {
+                    int len = Math.min(777, result.length - off);
+                    mach.convert(result, off, len, result, off);
+                }
+                assertArrayEquals(expected, result);
+                assertEquals(plain.setting(), mach.setting());
+                assertEquals(offHeap, mach.cache().offHeap());
+                assertEquals(text.length, mach.cache().lookups());
+            }
+        }
+    }
+
+    @Test
+    public void testReuse() {
+        char[] msg = new char[100000];
+        Arrays.fill(msg, 'A');
+        Machine mach = machine("AAAA", 1 << 24, false);
+        mach.convert(msg, 0, msg.length, new char[msg.length], 0);
+        long misses = mach.cache().misses();
+        assertTrue(misses < msg.length / 4);
+        mach.setRotors("AAAA");
+        char[] out = new char[msg.length];
+        mach.convert(msg, 0, msg.length, out, 0);
+        assertEquals(misses, mach.cache().misses());
+        assertEquals(machine("AAAA", 0, false).convert(new String(msg)),
+                     new String(out));
+
+        mach.setPlugboard(new Permutation("", AZ));
+        mach.setRotors("AAAA");
+        mach.convert(msg, 0, msg.length, out, 0);
+        assertEquals(misses, mach.cache().misses());
+        assertEquals(msg.length, mach.cache().lookups());
+    }
+
+    @Test
+    public void testSlotLimits() {
+        long big = 4096L << 20;
+        int onHeap = SubstitutionCache.slots(26, big, false);
+        int offHeap = SubstitutionCache.slots(26, big, true);
+        assertTrue(offHeap > 1);
+        assertTrue(2L * offHeap * 26 * 26 <= Integer.MAX_VALUE);
+        assertTrue((long) onHeap * 26 * 26 <= Integer.MAX_VALUE);
+        assertEquals(1, SubstitutionCache.slots(26, 0, true));
+        assertEquals(10, SubstitutionCache.slots(26, 10 * 2 * 676, true));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testAlphabetTooLarge() {
+        SubstitutionCache.slots(46341, 1 << 20, false);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNegativeSize() {
+        SubstitutionCache.slots(26, -1, true);
+    }
+}
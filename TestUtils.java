@@ -1,6 +1,8 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -39,6 +41,65 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The upper-case alphabet, over which the naval rotors are
+     *  defined. */
+    static final Alphabet AZ = new Alphabet(UPPER_STRING);
+
+    /** The notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return new naval rotors over AZ named NAMES, in that order: B and
+     *  C are reflectors, Beta and Gamma fixed rotors, and the others
+     *  moving rotors with their NAVAL_NOTCHES. */
+    static List<Rotor> navalRotors(String... names) {
+        List<Rotor> rotors = new ArrayList<>();
+        for (String name : names) {
+            Permutation perm = new Permutation(NAVALA.get(name), AZ);
+            if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (name.equals("Beta") || name.equals("Gamma")) {
+                rotors.add(new FixedRotor(name, perm));
+            } else {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            }
+        }
+        return rotors;
+    }
+
+    /** Return a machine with a slot for each of the naval rotors NAMES,
+     *  which are all it has available, and one pawl for each moving
+     *  one.  Unless SETTING is null, the rotors are inserted in the
+     *  order of NAMES and set to SETTING, and the plugboard set to the
+     *  cycles PLUGBOARD. */
+    static Machine navalMachine(String setting, String plugboard,
+                                String... names) {
+        List<Rotor> rotors = navalRotors(names);
+        int pawls = 0;
+        for (Rotor r : rotors) {
+            if (r.rotates()) {
+                pawls += 1;
+            }
+        }
+        Machine mach = new Machine(AZ, names.length, pawls, rotors);
+        if (setting != null) {
+            mach.insertRotors(names);
+            mach.setRotors(setting);
+            mach.setPlugboard(new Permutation(plugboard, AZ));
+        }
+        return mach;
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
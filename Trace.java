@@ -0,0 +1,194 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static enigma.EnigmaException.*;
+
+/** A trace of keypresses that is cheap enough to leave on.  Each thread
+ *  records into its own ring buffer, keeping only the spec, the rotor
+ *  positions after stepping and the input of each sampled keypress;
+ *  the path of the signal through the machine is worked out again only
+ *  when the trace is printed.  In full mode every keypress is recorded
+ *  and a buffer is printed whenever it fills, giving the old verbose
+ *  output.  In sampled mode every INTERVAL-th keypress is recorded, and
+ *  each buffer keeps the most recent CAPACITY of them until dump.
+ *  When no trace has been started, machines check one flag per
+ *  conversion and record nothing.
+ *  @author NikkiTrueblood
+ */
+final class Trace {
+
+    /** Not instantiable. */
+    private Trace() {
+    }
+
+    /** Start a full trace, printed to OUT. */
+    static void startFull(PrintStream out) {
+        start(1, true, out);
+    }
+
+    /** Start a trace of every INTERVAL-th keypress on each thread,
+     *  keeping the last CAPACITY per thread until dumped to OUT. */
+    static void startSampled(int interval, PrintStream out) {
+        if (interval <= 0) {
+            throw error("bad trace interval: %d", interval);
+        }
+        start(interval, false, out);
+    }
+
+    /** Stop tracing, discarding anything recorded and not yet dumped. */
+    static void stop() {
+        _enabled = false;
+        for (Buffer buffer : ALL) {
+            buffer.clear();
+        }
+    }
+
+    /** Start a trace recording every INTERVAL-th keypress, printing each
+     *  buffer when it fills iff FULL, to OUT. */
+    private static void start(int interval, boolean full, PrintStream out) {
+        stop();
+        _interval = interval;
+        _full = full;
+        _out = out;
+        _enabled = true;
+    }
+
+    /** Return true iff a trace has been started. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Return the current thread's buffer. */
+    static Buffer buffer() {
+        return BUFFERS.get();
+    }
+
+    /** Print and clear everything recorded so far. */
+    static void dump() {
+        for (Buffer buffer : ALL) {
+            buffer.dump();
+        }
+    }
+
+    /** One thread's ring of recorded keypresses. */
+    static final class Buffer {
+
+        /** An empty buffer. */
+        private Buffer() {
+            _specs = new MachineSpec[CAPACITY];
+            _positions = new int[CAPACITY][];
+            _inputs = new int[CAPACITY];
+            _keypresses = new long[CAPACITY];
+        }
+
+        /** Note a keypress of input C on the machine SPEC, whose rotors
+         *  have stepped to POS, recording it if it is sampled. */
+        void record(MachineSpec spec, int[] pos, int c) {
+            _keypress += 1;
+            if (_keypress % _interval != 0) {
+                return;
+            }
+            int i = (int) (_count % CAPACITY);
+            if (_positions[i] == null || _positions[i].length != pos.length) {
+                _positions[i] = new int[pos.length];
+            }
+            System.arraycopy(pos, 0, _positions[i], 0, pos.length);
+            _specs[i] = spec;
+            _inputs[i] = c;
+            _keypresses[i] = _keypress;
+            _count += 1;
+            if (_full && _count == CAPACITY) {
+                dump();
+            }
+        }
+
+        /** Print and clear my records, oldest first. */
+        synchronized void dump() {
+            long first = Math.max(0, _count - CAPACITY);
+            StringBuilder text = new StringBuilder();
+            for (long n = first; n < _count; n += 1) {
+                int i = (int) (n % CAPACITY);
+                if (!_full) {
+                    text.append('@').append(_keypresses[i]).append(' ');
+                }
+                format(text, _specs[i], _positions[i], _inputs[i]);
+                _specs[i] = null;
+            }
+            _count = 0;
+            synchronized (_out) {
+                _out.print(text);
+                _out.flush();
+            }
+        }
+
+        /** Forget all keypresses. */
+        synchronized void clear() {
+            Arrays.fill(_specs, null);
+            _keypress = _count = 0;
+        }
+
+        /** Append to TEXT the path of input C through SPEC at rotor
+         *  positions POS: the setting, then each stage's output. */
+        private void format(StringBuilder text, MachineSpec spec, int[] pos,
+                            int c) {
+            Alphabet alpha = spec.alphabet();
+            text.append('[').append(spec.setting(new MachineState(pos)))
+                .append("] ").append(alpha.toChar(c)).append(" -> ");
+            c = spec.plugboard().permute(c);
+            text.append(alpha.toChar(c)).append(" -> ");
+            for (int k = spec.numRotors() - 1; k >= 0; k -= 1) {
+                Permutation perm = spec.rotor(k).permutation();
+                int result = perm.permute(c + pos[k]);
+                text.append(alpha.toChar(result)).append(" -> ");
+                c = perm.wrap(result - pos[k]);
+            }
+            for (int k = 1; k < spec.numRotors(); k += 1) {
+                Permutation perm = spec.rotor(k).permutation();
+                int result = perm.invert(c + pos[k]);
+                text.append(alpha.toChar(result)).append(" -> ");
+                c = perm.wrap(result - pos[k]);
+            }
+            c = spec.plugboard().permute(c);
+            text.append(alpha.toChar(c)).append(System.lineSeparator());
+        }
+
+        /** Spec of each recorded keypress. */
+        private final MachineSpec[] _specs;
+        /** Rotor positions of each recorded keypress. */
+        private final int[][] _positions;
+        /** Input of each recorded keypress. */
+        private final int[] _inputs;
+        /** Number of each recorded keypress on this thread. */
+        private final long[] _keypresses;
+        /** Number of keypresses seen. */
+        private long _keypress;
+        /** Number of keypresses recorded since the last dump. */
+        private long _count;
+    }
+
+    /** Number of keypresses kept by each buffer. */
+    static final int CAPACITY = 4096;
+
+    /** Every thread's buffer. */
+    private static final ConcurrentLinkedQueue<Buffer> ALL =
+        new ConcurrentLinkedQueue<>();
+    /** The current thread's buffer. */
+    private static final ThreadLocal<Buffer> BUFFERS =
+        ThreadLocal.withInitial(() -> {
+            Buffer buffer = new Buffer();
+            ALL.add(buffer);
+            return buffer;
+        });
+
+    /** True iff a trace has been started. */
+    private static volatile boolean _enabled;
+    /** Record every _interval-th keypress. */
+    private static int _interval = 1;
+    /** True iff buffers are printed whenever they fill. */
+    private static boolean _full;
+    /** Destination of printed traces. */
+    private static PrintStream _out = System.err;
+}
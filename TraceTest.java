@@ -0,0 +1,109 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Trace class.
+ *  @author NikkiTrueblood
+ */
+public class TraceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a three-rotor machine at AA. */
+    private Machine mach1() {
+        return navalMachine("AA", "(HQ) (EX)", "B", "III", "I");
+    }
+
+    @Test
+    public void testFullTrace() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Trace.startFull(new PrintStream(bytes, true));
+        String result;
+        try {
+            result = mach1().convert("HELLO");
+            Trace.dump();
+        } finally {
+            Trace.stop();
+        }
+        assertEquals(mach1().convert("HELLO"), result);
+        String[] lines = bytes.toString().split(System.lineSeparator());
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].startsWith("[AB] H -> Q -> "));
+        assertTrue(lines[0].endsWith(" -> " + result.charAt(0)));
+        assertEquals(2 + 3 + 2, lines[0].split(" -> ").length - 1);
+        assertTrue(lines[4].startsWith("[AF] O -> O -> "));
+    }
+
+    @Test
+    public void testSampledTrace() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Trace.startSampled(3, new PrintStream(bytes, true));
+        try {
+            mach1().convert("ABCDEFGHIJ");
+            assertEquals("", bytes.toString());
+            Trace.dump();
+        } finally {
+            Trace.stop();
+        }
+        String[] lines = bytes.toString().split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("@3 [AD] C -> "));
+        assertTrue(lines[2].startsWith("@9 [AJ] I -> "));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadInterval() {
+        Trace.startSampled(0, System.err);
+    }
+
+    @Test
+    public void testConversionEvents() throws Exception {
+        Path file = Files.createTempFile("enigma", ".jfr");
+        List<Integer> lengths = new ArrayList<>();
+        try (Recording recording = new Recording()) {
+            recording.enable("enigma.Conversion").withThreshold(Duration.ZERO);
+            recording.start();
+            mach1().convert("HELLOWORLD");
+            Machine bytes = ByteMachines.generate(1, 5, 3);
+            bytes.convert(ByteBuffer.allocateDirect(300),
+                          ByteBuffer.allocateDirect(200));
+            mach1().convert(CharBuffer.wrap("ABC").asReadOnlyBuffer(),
+                            CharBuffer.allocate(3));
+            char[] text = "KEYSTRM".toCharArray();
+            new KeystreamCache(1, 100).get(mach1())
+                .convert(0, text, 0, text.length, text, 0);
+            recording.stop();
+            recording.dump(file);
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName()
+                    .equals("enigma.Conversion")) {
+                    lengths.add(event.getInt("length"));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+        Collections.sort(lengths);
+        assertEquals(Arrays.asList(3, 7, 10, 200), lengths);
+    }
+}
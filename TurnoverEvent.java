@@ -0,0 +1,31 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A Flight Recorder event for a rotor other than the fast one being
+ *  moved by a keypress.  When this event is enabled, machines step
+ *  character by character so that they can see each turnover.
+ *  @author NikkiTrueblood
+ */
+@Name("enigma.Turnover")
+@Label("Rotor Turnover")
+@Category("Enigma")
+@Description("A rotor advanced by the rotor to its right")
+class TurnoverEvent extends Event {
+
+    /** Slot of the rotor that moved. */
+    @Label("Slot")
+    int slot;
+
+    /** Name of the rotor that moved. */
+    @Label("Rotor")
+    String rotor;
+
+    /** Setting of all the rotors after the keypress. */
+    @Label("Setting")
+    String setting;
+}
@@ -16,7 +16,22 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                AlphabetTest.class,
+                MessageInputTest.class,
+                MessageOutputTest.class,
+                KeySearchTest.class,
+                BombeTest.class,
+                PlugboardClimberTest.class,
+                MachineImageTest.class,
+                MetricsTest.class,
+                TraceTest.class,
+                ServerTest.class,
+                EnigmaStreamTest.class,
+                ByteMachinesTest.class,
+                SubstitutionCacheTest.class,
+                KeystreamCacheTest.class,
+                MainTest.class));
     }
 
 }
@@ -0,0 +1,206 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/** Builders of alphabets, rotors, machines and input files of given
+ *  sizes for the benchmarks.  Everything is generated from fixed seeds,
+ *  so that every run measures the same work.
+ *  @author NikkiTrueblood
+ */
+final class BenchUtils {
+
+    /** Not instantiable. */
+    private BenchUtils() {
+    }
+
+    /** Return an alphabet of SIZE characters: the upper-case letters
+     *  when SIZE <= 26, printable ASCII characters other than '(', ')'
+     *  and '*' when it fits in those (so that files stay readable in any
+     *  charset), and otherwise SIZE consecutive characters from U+0100
+     *  on. */
+    static Alphabet alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        if (size <= 26) {
+            for (int i = 0; i < size; i += 1) {
+                chars.append((char) ('A' + i));
+            }
+        } else if (size <= ASCII.length()) {
+            chars.append(ASCII, 0, size);
+        } else {
+            for (int i = 0; i < size; i += 1) {
+                chars.append((char) (FIRST + i));
+            }
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return cycles for a random permutation of ALPHA, using RANDOM. */
+    static String cycles(Alphabet alpha, Random random) {
+        int[] order = shuffle(alpha.size(), random);
+        StringBuilder cycles = new StringBuilder();
+        int i = 0;
+        while (i < order.length) {
+            int len = 1 + random.nextInt(order.length - i);
+            cycles.append('(');
+            for (int end = i + len; i < end; i += 1) {
+                cycles.append(alpha.toChar(order[i]));
+            }
+            cycles.append(") ");
+        }
+        return cycles.toString().trim();
+    }
+
+    /** Return cycles for a random pairing of all of ALPHA, whose size
+     *  must be even, using RANDOM. */
+    static String pairs(Alphabet alpha, Random random) {
+        int[] order = shuffle(alpha.size(), random);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i + 1 < order.length; i += 2) {
+            cycles.append('(').append(alpha.toChar(order[i]))
+                .append(alpha.toChar(order[i + 1])).append(") ");
+        }
+        return cycles.toString().trim();
+    }
+
+    /** Return the lines of a configuration file for machines over an
+     *  alphabet of ALPHASIZE characters with NUMROTORS slots, NUMROTORS
+     *  - 2 of them moving, and a catalog with two rotors of each kind
+     *  more than the machine needs. */
+    static List<String> config(int alphaSize, int numRotors) {
+        Alphabet alpha = alphabet(alphaSize);
+        Random random = new Random(SEED);
+        List<String> lines = new ArrayList<>();
+        lines.add(chars(alpha));
+        lines.add(numRotors + " " + (numRotors - 2));
+        for (int k = 0; k < 2; k += 1) {
+            lines.add("R" + k + " R " + pairs(alpha, random));
+        }
+        for (int k = 0; k < 3; k += 1) {
+            lines.add("F" + k + " N " + cycles(alpha, random));
+        }
+        for (int k = 0; k < numRotors; k += 1) {
+            lines.add("M" + k + " M" + alpha.toChar(random.nextInt(alphaSize))
+                      + " " + cycles(alpha, random));
+        }
+        return lines;
+    }
+
+    /** Return the '*' line selecting the first rotors of config(ALPHASIZE,
+     *  NUMROTORS), all at the first character of the alphabet, with a
+     *  plugboard of a few pairs. */
+    static String settingLine(int alphaSize, int numRotors) {
+        Alphabet alpha = alphabet(alphaSize);
+        StringBuilder line = new StringBuilder("* R0 F0");
+        for (int k = 0; k < numRotors - 2; k += 1) {
+            line.append(" M").append(k);
+        }
+        line.append(' ');
+        for (int k = 1; k < numRotors; k += 1) {
+            line.append(alpha.toChar(0));
+        }
+        for (int k = 0; k + 1 < Math.min(alphaSize, 10); k += 2) {
+            line.append(" (").append(alpha.toChar(k))
+                .append(alpha.toChar(k + 1)).append(')');
+        }
+        return line.toString();
+    }
+
+    /** Return a machine over an alphabet of ALPHASIZE characters with
+     *  NUMROTORS slots, configured by settingLine(ALPHASIZE, NUMROTORS)
+     *  apart from its plugboard. */
+    static Machine machine(int alphaSize, int numRotors) {
+        Alphabet alpha = alphabet(alphaSize);
+        Random random = new Random(SEED);
+        List<Rotor> catalog = new ArrayList<>();
+        catalog.add(new Reflector("R0",
+                new Permutation(pairs(alpha, random), alpha)));
+        catalog.add(new FixedRotor("F0",
+                new Permutation(cycles(alpha, random), alpha)));
+        String[] names = new String[numRotors];
+        names[0] = "R0";
+        names[1] = "F0";
+        for (int k = 2; k < numRotors; k += 1) {
+            names[k] = "M" + (k - 2);
+            catalog.add(new MovingRotor(names[k],
+                    new Permutation(cycles(alpha, random), alpha),
+                    String.valueOf(alpha.toChar(random.nextInt(alphaSize)))));
+        }
+        Machine mach = new Machine(alpha, numRotors, numRotors - 2, catalog);
+        mach.insertRotors(names);
+        char[] setting = new char[numRotors - 1];
+        Arrays.fill(setting, alpha.toChar(0));
+        mach.setRotors(new String(setting));
+        return mach;
+    }
+
+    /** Return a random message of LENGTH characters from ALPHA. */
+    static String message(Alphabet alpha, int length) {
+        Random random = new Random(SEED);
+        char[] msg = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            msg[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return new String(msg);
+    }
+
+    /** Write a configuration file for config(ALPHASIZE, NUMROTORS) and an
+     *  input file of LINES message lines of 80 characters under one '*'
+     *  line into DIR, returning their paths. */
+    static Path[] files(Path dir, int alphaSize, int numRotors, int lines)
+        throws IOException {
+        Charset charset = Charset.defaultCharset();
+        Path config = dir.resolve("bench.conf");
+        Path input = dir.resolve("bench.in");
+        Files.write(config, config(alphaSize, numRotors), charset);
+        List<String> text = new ArrayList<>();
+        text.add(settingLine(alphaSize, numRotors));
+        String msg = message(alphabet(alphaSize), LINE_LENGTH * lines);
+        for (int i = 0; i < lines; i += 1) {
+            text.add(msg.substring(i * LINE_LENGTH, (i + 1) * LINE_LENGTH));
+        }
+        Files.write(input, text, charset);
+        return new Path[] { config, input };
+    }
+
+    /** Return the characters of ALPHA as a String. */
+    private static String chars(Alphabet alpha) {
+        char[] chars = new char[alpha.size()];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = alpha.toChar(i);
+        }
+        return new String(chars);
+    }
+
+    /** Return a random ordering of 0 .. N-1, using RANDOM. */
+    private static int[] shuffle(int n, Random random) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        return order;
+    }
+
+    /** Seed for all generated data. */
+    static final long SEED = 61;
+    /** Length of generated message lines. */
+    static final int LINE_LENGTH = 80;
+    /** Printable ASCII characters that may appear in an alphabet. */
+    private static final String ASCII =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789"
+        + "!\"#$%&'+,-./:;<=>?@[\\]^_`{|}~";
+    /** First character of alphabets too large for ASCII. */
+    private static final char FIRST = '\u0100';
+}
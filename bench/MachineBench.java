@@ -0,0 +1,83 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of whole-machine conversion, one keypress at a time and
+ *  of whole messages, over alphabet sizes, rotor counts and message
+ *  lengths.  The machine keeps stepping from one invocation to the
+ *  next, so notch turnovers are included at their natural rate.
+ *  @author NikkiTrueblood
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MachineBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "256" })
+    public int alphabetSize;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "3", "5", "8" })
+    public int numRotors;
+
+    /** Length of the message converted by convertString. */
+    @Param({ "16", "1024", "65536" })
+    public int length;
+
+    /** Build the machine and message. */
+    @Setup
+    public void setUp() {
+        _machine = BenchUtils.machine(alphabetSize, numRotors);
+        _message = BenchUtils.message(_machine.alphabet(), length);
+        _inputs = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i += 1) {
+            _inputs[i] = _machine.alphabet().toInt(_message.charAt(
+                    i % length));
+        }
+    }
+
+    /** Convert single indices.  The time is per keypress. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int convertInt() {
+        int sum = 0;
+        for (int c : _inputs) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Convert a whole message.  The time is per message. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** Number of keypresses per invocation of convertInt. */
+    static final int INPUTS = 1024;
+
+    /** The machine. */
+    private Machine _machine;
+    /** Random message of the given length. */
+    private String _message;
+    /** Indices of the first INPUTS characters of _message, repeated as
+     *  needed. */
+    private int[] _inputs;
+}
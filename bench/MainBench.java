@@ -0,0 +1,93 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Main: reading a configuration file, and a full run
+ *  from an input file to an output file.  The files are generated in a
+ *  temporary directory before the trial and removed after it.
+ *  @author NikkiTrueblood
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MainBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64" })
+    public int alphabetSize;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "5", "8" })
+    public int numRotors;
+
+    /** Number of 80-character message lines in the input file. */
+    @Param({ "100", "10000" })
+    public int lines;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        Path[] files = BenchUtils.files(_dir, alphabetSize, numRotors,
+                                        lines);
+        _args = Arrays.asList(files[0].toString(), files[1].toString(),
+                              _dir.resolve("bench.out").toString());
+    }
+
+    /** Remove the files. */
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String name : _args) {
+            Files.deleteIfExists(Path.of(name));
+        }
+        Files.deleteIfExists(_dir);
+    }
+
+    /** Parse the configuration file. */
+    @Benchmark
+    public Machine readConfig() {
+        Main main = new Main(_args);
+        try {
+            return main.readConfig();
+        } finally {
+            main.close();
+        }
+    }
+
+    /** Convert the input file into the output file. */
+    @Benchmark
+    public void fileToFile() {
+        Main main = new Main(_args);
+        try {
+            main.process();
+        } finally {
+            main.close();
+        }
+    }
+
+    /** Directory holding the files. */
+    private Path _dir;
+    /** Arguments to Main: configuration, input and output file names. */
+    private List<String> _args;
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of single lookups in Permutation and Alphabet.  Each
+ *  invocation looks up INPUTS pseudo-random values, so the reported
+ *  time is per lookup.
+ *  @author NikkiTrueblood
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PermutationBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "256" })
+    public int alphabetSize;
+
+    /** Build the permutation and inputs. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = BenchUtils.alphabet(alphabetSize);
+        Random random = new Random(BenchUtils.SEED);
+        _alphabet = alpha;
+        _perm = new Permutation(BenchUtils.cycles(alpha, random), alpha);
+        _ints = new int[INPUTS];
+        _chars = new char[INPUTS];
+        for (int i = 0; i < INPUTS; i += 1) {
+            _ints[i] = random.nextInt(alphabetSize);
+            _chars[i] = alpha.toChar(_ints[i]);
+        }
+    }
+
+    /** Permute indices. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int permuteInt() {
+        int sum = 0;
+        for (int c : _ints) {
+            sum += _perm.permute(c);
+        }
+        return sum;
+    }
+
+    /** Invert indices. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int invertInt() {
+        int sum = 0;
+        for (int c : _ints) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** Permute characters. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int permuteChar() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _perm.permute(c);
+        }
+        return sum;
+    }
+
+    /** Invert characters. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int invertChar() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** Look up the indices of characters. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int alphabetToInt() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _alphabet.toInt(c);
+        }
+        return sum;
+    }
+
+    /** Number of lookups per invocation. */
+    static final int INPUTS = 1024;
+
+    /** The alphabet. */
+    private Alphabet _alphabet;
+    /** A random permutation of _alphabet. */
+    private Permutation _perm;
+    /** Random indices into _alphabet. */
+    private int[] _ints;
+    /** The characters of _alphabet at _ints. */
+    private char[] _chars;
+}
@@ -0,0 +1,79 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of a single rotor's forward and backward conversions at
+ *  a setting other than 0.  The reported time is per conversion.
+ *  @author NikkiTrueblood
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RotorBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "256" })
+    public int alphabetSize;
+
+    /** Build the rotor and inputs. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = BenchUtils.alphabet(alphabetSize);
+        Random random = new Random(BenchUtils.SEED);
+        _rotor = new MovingRotor("M",
+                new Permutation(BenchUtils.cycles(alpha, random), alpha),
+                String.valueOf(alpha.toChar(0)));
+        _rotor.set(alphabetSize / 3);
+        _inputs = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i += 1) {
+            _inputs[i] = random.nextInt(alphabetSize);
+        }
+    }
+
+    /** Convert through the rotor from right to left. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int convertForward() {
+        int sum = 0;
+        for (int c : _inputs) {
+            sum += _rotor.convertForward(c);
+        }
+        return sum;
+    }
+
+    /** Convert through the rotor from left to right. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int convertBackward() {
+        int sum = 0;
+        for (int c : _inputs) {
+            sum += _rotor.convertBackward(c);
+        }
+        return sum;
+    }
+
+    /** Number of conversions per invocation. */
+    static final int INPUTS = 1024;
+
+    /** The rotor. */
+    private Rotor _rotor;
+    /** Random indices into its alphabet. */
+    private int[] _inputs;
+}